@@ -4,12 +4,15 @@ import com.google.auto.service.AutoService;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
+import javax.annotation.processing.ProcessingEnvironment;
 import javax.annotation.processing.Processor;
 import javax.annotation.processing.RoundEnvironment;
-import javax.annotation.processing.SupportedAnnotationTypes;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.TypeElement;
@@ -18,24 +21,40 @@ import blade.Blade;
 import eu.f3rog.blade.compiler.builder.ClassManager;
 import eu.f3rog.blade.compiler.util.BaseProcessor;
 import eu.f3rog.blade.compiler.util.ProcessorError;
-import eu.f3rog.blade.compiler.util.ProcessorUtils;
 
 @AutoService(Processor.class)
-@SupportedAnnotationTypes({"*"})
 public class BladeProcessor extends BaseProcessor {
 
+    /**
+     * Gradle option of processors, which generate each file from one class (e.g. <code>_Helper</code>).
+     */
+    private static final String GRADLE_ISOLATING = "org.gradle.annotation.processing.isolating";
+    /**
+     * Gradle option of processors, which generate a file from more classes (e.g. <code>blade.F</code>).
+     */
+    private static final String GRADLE_AGGREGATING = "org.gradle.annotation.processing.aggregating";
+
     public enum Module {
 
-        ARG("eu.f3rog.blade.compiler.arg.ArgProcessorModule"),
-        EXTRA("eu.f3rog.blade.compiler.extra.ExtraProcessorModule"),
-        STATE("eu.f3rog.blade.compiler.state.StateProcessorModule"),
-        MVP("eu.f3rog.blade.compiler.mvp.MvpProcessorModule"),
-        PARCEL("eu.f3rog.blade.compiler.parcel.ParcelProcessorModule");
+        ARG("eu.f3rog.blade.compiler.arg.ArgProcessorModule", true, "blade.Arg"),
+        EXTRA("eu.f3rog.blade.compiler.extra.ExtraProcessorModule", true, "blade.Extra"),
+        STATE("eu.f3rog.blade.compiler.state.StateProcessorModule", false, "blade.State"),
+        MVP("eu.f3rog.blade.compiler.mvp.MvpProcessorModule", false, "javax.inject.Inject"),
+        PARCEL("eu.f3rog.blade.compiler.parcel.ParcelProcessorModule", false, "blade.Parcel");
 
         private String mPath;
-
-        Module(String path) {
+        private boolean mAggregating;
+        private String[] mAnnotationTypes;
+
+        /**
+         * @param path            Name of module class.
+         * @param aggregating     <code>true</code> if module generates a class from all annotated classes.
+         * @param annotationTypes Annotations processed by the module (besides {@link Blade}).
+         */
+        Module(String path, boolean aggregating, String... annotationTypes) {
             mPath = path;
+            mAggregating = aggregating;
+            mAnnotationTypes = annotationTypes;
         }
 
         @Override
@@ -46,6 +65,8 @@ public class BladeProcessor extends BaseProcessor {
     }
 
     private List<ProcessorModule> mModules;
+    private List<Module> mModuleTypes;
+    private ClassManager mClassManager;
 
     public BladeProcessor() {
         this(Module.values()); // try all modules
@@ -53,11 +74,13 @@ public class BladeProcessor extends BaseProcessor {
 
     public BladeProcessor(Module... tryModuleClassNames) {
         mModules = new ArrayList<>();
+        mModuleTypes = new ArrayList<>();
         for (Module moduleClassName : tryModuleClassNames) {
             try {
                 Class<ProcessorModule> moduleClass = (Class<ProcessorModule>) Class.forName(moduleClassName.toString());
                 ProcessorModule module = moduleClass.newInstance();
                 mModules.add(module);
+                mModuleTypes.add(moduleClassName);
                 //System.out.println("> APT using " + moduleClass.getSimpleName());
             } catch (Exception ignore) {
                 // module is not accessible
@@ -65,10 +88,50 @@ public class BladeProcessor extends BaseProcessor {
         }
     }
 
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        Set<String> types = new LinkedHashSet<>();
+        types.add(Blade.class.getName());
+        for (Module module : mModuleTypes) {
+            types.addAll(Arrays.asList(module.mAnnotationTypes));
+        }
+        return types;
+    }
+
+    /**
+     * Returns type of incremental annotation processing for Gradle (processor is registered as <code>dynamic</code>).
+     */
+    @Override
+    public Set<String> getSupportedOptions() {
+        for (Module module : mModuleTypes) {
+            if (module.mAggregating) {
+                return Collections.singleton(GRADLE_AGGREGATING);
+            }
+        }
+        return Collections.singleton(GRADLE_ISOLATING);
+    }
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        mClassManager = new ClassManager();
+    }
+
+    @Override
+    protected void startRound() {
+        super.startRound();
+        ClassManager.setCurrent(mClassManager);
+    }
+
+    @Override
+    protected void endRound() {
+        ClassManager.setCurrent(null);
+        super.endRound();
+    }
+
     @Override
     protected void prepare(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) throws ProcessorError, IOException {
-        ProcessorUtils.setProcessingEnvironment(getProcessingEnvironment());
-        ClassManager.init();
+        // state is created in init(), so the processor does not depend on anything static
     }
 
     @Override
@@ -89,7 +152,7 @@ public class BladeProcessor extends BaseProcessor {
     @Override
     protected void finish(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) throws ProcessorError, IOException {
         // create class files
-        ClassManager.getInstance().build();
+        mClassManager.build();
     }
 
 }
\ No newline at end of file
@@ -160,15 +160,28 @@ public abstract class BaseClassBuilder
     public void end() throws ProcessorError {
     }
 
+    /**
+     * Creates Java file for generated class, but does not write it. It uses processing environment, so it has to be
+     * called from the processor thread.
+     *
+     * @return Java file or <code>null</code> if class should not be generated
+     */
+    public JavaFile createJavaFile() throws ProcessorError {
+        end();
+        TypeSpec cls = mBuilder.build();
+        return JavaFile.builder(getClassName().packageName(), cls).build();
+    }
+
     /**
      * Builds Java file for generated class.
      */
     @Override
     public void build() throws ProcessorError, IOException {
-        end();
-        TypeSpec cls = mBuilder.build();
+        JavaFile javaFile = createJavaFile();
+        if (javaFile == null) {
+            return;
+        }
         // create file
-        JavaFile javaFile = JavaFile.builder(getClassName().packageName(), cls).build();
         javaFile.writeTo(ProcessorUtils.getFiler());
         //javaFile.writeTo(System.out);
 
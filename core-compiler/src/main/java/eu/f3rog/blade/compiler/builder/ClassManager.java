@@ -1,22 +1,37 @@
 package eu.f3rog.blade.compiler.builder;
 
 import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.JavaFile;
 
 import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.processing.Filer;
+import javax.lang.model.element.Element;
 import javax.lang.model.element.TypeElement;
+import javax.tools.JavaFileObject;
 
 import eu.f3rog.blade.compiler.builder.helper.HelperClassBuilder;
 import eu.f3rog.blade.compiler.util.ClassNameComparator;
 import eu.f3rog.blade.compiler.util.ProcessorError;
+import eu.f3rog.blade.compiler.util.ProcessorUtils;
 
 /**
- * Class {@link ClassManager}
+ * Class {@link ClassManager} keeps classes generated by one processor. Each processor has its own manager.
  *
  * @author FrantisekGazo
  * @version 2015-12-15
@@ -24,21 +39,39 @@ import eu.f3rog.blade.compiler.util.ProcessorError;
 public class ClassManager
         implements IBuildable {
 
-    private static ClassManager sInstance;
-
-    public static void init() {
-        sInstance = new ClassManager();
+    /**
+     * Manager of the processor running on the current thread.
+     */
+    private static final ThreadLocal<ClassManager> sCurrent = new ThreadLocal<>();
+    /**
+     * Minimum number of files rendered by one worker thread.
+     */
+    private static final int MIN_FILES_PER_THREAD = 16;
+
+    /**
+     * Sets manager of the current thread. It has to be cleared when processing round ends.
+     */
+    public static void setCurrent(ClassManager classManager) {
+        if (classManager != null) {
+            sCurrent.set(classManager);
+        } else {
+            sCurrent.remove();
+        }
     }
 
     public static ClassManager getInstance() {
-        return sInstance;
+        ClassManager classManager = sCurrent.get();
+        if (classManager == null) {
+            throw new IllegalStateException("ClassManager is available only during processing!");
+        }
+        return classManager;
     }
 
     private final Map<Class, BaseClassBuilder> mSpecialClasses;
     private final Map<ClassName, HelperClassBuilder> mHelpers;
 
-    private ClassManager() {
-        mSpecialClasses = new HashMap<>();
+    public ClassManager() {
+        mSpecialClasses = new LinkedHashMap<>();
         mHelpers = new HashMap<>();
     }
 
@@ -71,20 +104,136 @@ public class ClassManager
         }
     }
 
+    /**
+     * Builds all classes. Modules use processing environment, so classes are created on the processor thread.
+     * Only rendering of Java files runs in parallel. Files are written in a deterministic order: helpers sorted by name
+     * and then special classes sorted by name.
+     */
     @Override
     public void build() throws ProcessorError, IOException {
+        List<JavaFile> javaFiles = new ArrayList<>();
+
         List<ClassName> classes = new ArrayList<>(mHelpers.keySet());
         Collections.sort(classes, new ClassNameComparator());
         for (int i = 0, size = classes.size(); i < size; i++) {
             HelperClassBuilder builder = mHelpers.get(classes.get(i));
-            // build file
-            builder.build();
+            addJavaFile(javaFiles, builder);
         }
 
-        // build special classes
+        // build special classes (in order of their first use, files are sorted by name)
+        List<JavaFile> specialFiles = new ArrayList<>();
         for (Map.Entry<Class, BaseClassBuilder> entry : mSpecialClasses.entrySet()) {
-            entry.getValue().build();
+            addJavaFile(specialFiles, entry.getValue());
+        }
+        Collections.sort(specialFiles, new Comparator<JavaFile>() {
+            @Override
+            public int compare(JavaFile l, JavaFile r) {
+                return getFileName(l).compareTo(getFileName(r));
+            }
+        });
+        javaFiles.addAll(specialFiles);
+
+        List<String> sources = render(javaFiles);
+        Filer filer = ProcessorUtils.getFiler();
+        for (int i = 0, size = javaFiles.size(); i < size; i++) {
+            write(filer, javaFiles.get(i), sources.get(i));
+        }
+        // weave plans are created together with helpers
+        for (int i = 0, size = classes.size(); i < size; i++) {
+            mHelpers.get(classes.get(i)).writeIndexEntry(filer);
+        }
+    }
+
+    private static void addJavaFile(List<JavaFile> javaFiles, BaseClassBuilder builder) throws ProcessorError {
+        JavaFile javaFile = builder.createJavaFile();
+        if (javaFile != null) {
+            javaFiles.add(javaFile);
+        }
+    }
+
+    /**
+     * Renders source code of given files. Rendering does not use processing environment, so it can run on more threads.
+     *
+     * @return source code in the same order as given files
+     */
+    private static List<String> render(List<JavaFile> javaFiles) throws IOException {
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), javaFiles.size() / MIN_FILES_PER_THREAD);
+        List<String> sources = new ArrayList<>(javaFiles.size());
+        if (threads <= 1) {
+            for (JavaFile javaFile : javaFiles) {
+                sources.add(javaFile.toString());
+            }
+            return sources;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new RenderThreadFactory());
+        try {
+            List<Future<String>> futures = new ArrayList<>(javaFiles.size());
+            for (final JavaFile javaFile : javaFiles) {
+                futures.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return javaFile.toString();
+                    }
+                }));
+            }
+
+            for (Future<String> future : futures) {
+                sources.add(getResult(future));
+            }
+            return sources;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static String getResult(Future<String> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("rendering interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
         }
     }
 
+    private static String getFileName(JavaFile javaFile) {
+        return javaFile.packageName.isEmpty()
+                ? javaFile.typeSpec.name
+                : javaFile.packageName + "." + javaFile.typeSpec.name;
+    }
+
+    /**
+     * Writes rendered source of given file (the same way as {@link JavaFile#writeTo(Filer)}).
+     */
+    private static void write(Filer filer, JavaFile javaFile, String source) throws IOException {
+        String fileName = getFileName(javaFile);
+        List<Element> originatingElements = javaFile.typeSpec.originatingElements;
+        JavaFileObject sourceFile = filer.createSourceFile(fileName,
+                originatingElements.toArray(new Element[originatingElements.size()]));
+        Writer writer = sourceFile.openWriter();
+        try {
+            writer.write(source);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static final class RenderThreadFactory
+            implements ThreadFactory {
+
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "blade-rendering-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
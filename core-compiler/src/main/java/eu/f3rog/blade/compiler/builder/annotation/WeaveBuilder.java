@@ -2,6 +2,13 @@ package eu.f3rog.blade.compiler.builder.annotation;
 
 import com.squareup.javapoet.AnnotationSpec;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import eu.f3rog.blade.compiler.util.ProcessorUtils;
 import eu.f3rog.blade.core.Weave;
 import eu.f3rog.blade.core.Weaves;
 
@@ -15,6 +22,8 @@ public final class WeaveBuilder {
 
     public static final String RENAME_SEPARATOR = "/";
 
+    private static final String CACHE_WEAVES = "weaves";
+
     public enum MethodWeaveType {
 
         BEFORE_BODY("^"), AFTER_BODY("_"), BEFORE_SUPER("<"), AFTER_SUPER(">");
@@ -63,12 +72,101 @@ public final class WeaveBuilder {
         }
     }
 
+    /**
+     * Class {@link WeaveSpec} describes one weave, which is stored in one {@link Weave} annotation.
+     */
+    public static final class WeaveSpec {
+
+        private final String mInto;
+        private final String mRename;
+        private final MethodWeaveType mMethodWeaveType;
+        private final WeavePriority mPriority;
+        private final List<String> mArgs;
+        private final String mStatement;
+
+        private WeaveSpec(String into, String rename, MethodWeaveType methodWeaveType, WeavePriority priority,
+                          List<String> args, String statement) {
+            mInto = into;
+            mRename = rename;
+            mMethodWeaveType = methodWeaveType;
+            mPriority = priority;
+            mArgs = args;
+            mStatement = statement;
+        }
+
+        public boolean isField() {
+            return Weave.WEAVE_FIELD.equals(mInto);
+        }
+
+        public boolean isConstructor() {
+            return Weave.WEAVE_CONSTRUCTOR.equals(mInto);
+        }
+
+        /**
+         * Returns name of target method or <code>null</code> if it is not a method weave.
+         */
+        public String getMethodName() {
+            return (isField() || isConstructor()) ? null : mInto;
+        }
+
+        public String getRename() {
+            return mRename;
+        }
+
+        public MethodWeaveType getMethodWeaveType() {
+            return mMethodWeaveType;
+        }
+
+        public WeavePriority getPriority() {
+            return mPriority;
+        }
+
+        /**
+         * Returns names of argument types.
+         */
+        public List<String> getArgs() {
+            return mArgs;
+        }
+
+        public String getStatement() {
+            return mStatement;
+        }
+
+        /**
+         * Returns value of {@link Weave#into()}.
+         */
+        public String getInto() {
+            String into = mInto;
+            if (mMethodWeaveType != null) {
+                into = mMethodWeaveType.getSign() + into;
+            }
+            if (mPriority != null) {
+                into = mPriority.getNum() + into;
+            }
+            if (mRename != null) {
+                into += RENAME_SEPARATOR + mRename;
+            }
+            return into;
+        }
+    }
+
     //region @Weave / @Weaves
 
     public static IWeaveInto weave() {
         return new WeaveBuilderImpl();
     }
 
+    /**
+     * Returns weaves of given annotation created by {@link WeaveBuilder} in the current processing round.
+     *
+     * @return weaves in order of their annotations (empty list for other annotations)
+     */
+    public static List<WeaveSpec> getWeaves(AnnotationSpec annotation) {
+        Map<AnnotationSpec, List<WeaveSpec>> weaves = ProcessorUtils.getCache(CACHE_WEAVES);
+        List<WeaveSpec> annotationWeaves = weaves.get(annotation);
+        return (annotationWeaves != null) ? annotationWeaves : Collections.<WeaveSpec>emptyList();
+    }
+
     public interface IWeaveInto extends IWeaveBuild {
 
         IMethodWeaveStatement method(String methodName, Class... args);
@@ -101,15 +199,21 @@ public final class WeaveBuilder {
 
         AnnotationSpec build();
 
+        /**
+         * Returns weaves without creating their annotation (e.g. when helper is not generated from source code).
+         */
+        List<WeaveSpec> buildWeaves();
+
     }
 
     private static final class WeaveBuilderImpl
             implements IWeaveInto, IMethodWeaveStatement {
 
         private AnnotationSpec.Builder mContainerAnnotationBuilder;
+        private final List<WeaveSpec> mWeaves = new ArrayList<>();
         private String mInto;
         private String mRename;
-        private Object[] mIntoArgs;
+        private String[] mIntoArgs;
         private StringBuilder mStatement = new StringBuilder();
         private MethodWeaveType mMethodWeaveType = null;
         private WeavePriority mWeavePriority = null;
@@ -144,14 +248,20 @@ public final class WeaveBuilder {
 
         @Override
         public IWeaveStatement constructor(Class... args) {
+            mRename = null;
             mInto = Weave.WEAVE_CONSTRUCTOR;
             mIntoArgs = toString(args);
+            mMethodWeaveType = null;
+            mWeavePriority = null;
             return this;
         }
 
         @Override
         public IWeaveStatement field() {
+            mRename = null;
             mInto = Weave.WEAVE_FIELD;
+            mMethodWeaveType = null;
+            mWeavePriority = null;
             return this;
         }
 
@@ -183,27 +293,35 @@ public final class WeaveBuilder {
             return build(true);
         }
 
+        @Override
+        public List<WeaveSpec> buildWeaves() {
+            build(true);
+            return Collections.unmodifiableList(new ArrayList<>(mWeaves));
+        }
+
         private AnnotationSpec build(boolean isFinal) {
             if (isFinal) {
+                AnnotationSpec annotation;
                 if (mContainerAnnotationBuilder != null) {
                     and();
-                    return mContainerAnnotationBuilder.build();
+                    annotation = mContainerAnnotationBuilder.build();
                 } else {
-                    return build(false);
+                    annotation = build(false);
                 }
+                // weave plan of the helper is created from the same weaves
+                Map<AnnotationSpec, List<WeaveSpec>> weaves = ProcessorUtils.getCache(CACHE_WEAVES);
+                weaves.put(annotation, Collections.unmodifiableList(new ArrayList<>(mWeaves)));
+                return annotation;
             } else {
-                String into = mInto;
-                if (mMethodWeaveType != null) {
-                    into = mMethodWeaveType.getSign() + into;
-                }
-                if (mWeavePriority != null) {
-                    into = mWeavePriority.getNum() + into;
-                }
-                if (mRename != null) {
-                    into += RENAME_SEPARATOR + mRename;
-                }
+                List<String> args = (mIntoArgs != null)
+                        ? Collections.unmodifiableList(Arrays.asList(mIntoArgs))
+                        : Collections.<String>emptyList();
+                WeaveSpec weave = new WeaveSpec(mInto, mRename, mMethodWeaveType, mWeavePriority, args,
+                        mStatement.toString());
+                mWeaves.add(weave);
+
                 AnnotationSpec.Builder a = AnnotationSpec.builder(Weave.class)
-                        .addMember("into", "$S", into);
+                        .addMember("into", "$S", weave.getInto());
 
                 if (mIntoArgs != null && mIntoArgs.length > 0) {
                     a.addMember("args", formatFor("$S", mIntoArgs.length), mIntoArgs);
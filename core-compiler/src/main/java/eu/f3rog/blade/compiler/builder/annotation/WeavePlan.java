@@ -0,0 +1,369 @@
+package eu.f3rog.blade.compiler.builder.annotation;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import eu.f3rog.blade.core.Weave;
+
+/**
+ * Class {@link WeavePlan} describes everything that has to be woven from one helper class into its target.
+ * <p>
+ * Plan is created by annotation processor from the same weaves as {@link Weave} annotations of the helper, so the weaver
+ * does not have to parse them. Entries are already in the order they should be woven and all types used by them are
+ * stored only once.
+ *
+ * @author FrantisekGazo
+ */
+public final class WeavePlan {
+
+    /**
+     * Version of binary format. Plans with other version are ignored by the weaver.
+     */
+    public static final int VERSION = 1;
+
+    public enum Kind {
+        FIELD, CONSTRUCTOR, METHOD
+    }
+
+    public static final class Entry {
+
+        private final Kind mKind;
+        private final String mName;
+        private final String mRename;
+        private final WeaveBuilder.MethodWeaveType mMethodWeaveType;
+        private final WeaveBuilder.WeavePriority mPriority;
+        private final int[] mArgs;
+        private final String mStatement;
+
+        private Entry(Kind kind, String name, String rename, WeaveBuilder.MethodWeaveType methodWeaveType,
+                      WeaveBuilder.WeavePriority priority, int[] args, String statement) {
+            mKind = kind;
+            mName = name;
+            mRename = rename;
+            mMethodWeaveType = methodWeaveType;
+            mPriority = priority;
+            mArgs = args;
+            mStatement = statement;
+        }
+
+        public Kind getKind() {
+            return mKind;
+        }
+
+        /**
+         * Returns name of helper field for {@link Kind#FIELD} or name of target method for {@link Kind#METHOD}.
+         */
+        public String getName() {
+            return mName;
+        }
+
+        public boolean shouldRename() {
+            return mRename != null;
+        }
+
+        public String getRename() {
+            return mRename;
+        }
+
+        public WeaveBuilder.MethodWeaveType getMethodWeaveType() {
+            return mMethodWeaveType;
+        }
+
+        public WeaveBuilder.WeavePriority getPriority() {
+            return mPriority;
+        }
+
+        /**
+         * Returns indexes of argument types in {@link WeavePlan#getTypes()}.
+         */
+        public int[] getArgs() {
+            return mArgs;
+        }
+
+        /**
+         * Returns statement ready for compilation or <code>null</code>.
+         */
+        public String getStatement() {
+            return mStatement;
+        }
+    }
+
+    private final String mTargetName;
+    private final List<String> mTypes;
+    private final List<Entry> mEntries;
+
+    private WeavePlan(String targetName, List<String> types, List<Entry> entries) {
+        mTargetName = targetName;
+        mTypes = types;
+        mEntries = entries;
+    }
+
+    /**
+     * Returns binary name of the class helper weaves into.
+     */
+    public String getTargetName() {
+        return mTargetName;
+    }
+
+    /**
+     * Returns names of all types used as arguments.
+     */
+    public List<String> getTypes() {
+        return mTypes;
+    }
+
+    /**
+     * Returns entries in order in which they have to be woven.
+     */
+    public List<Entry> getEntries() {
+        return mEntries;
+    }
+
+    public void write(OutputStream outputStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(outputStream);
+        out.writeShort(VERSION);
+        out.writeUTF(mTargetName);
+
+        out.writeShort(mTypes.size());
+        for (String type : mTypes) {
+            out.writeUTF(type);
+        }
+
+        out.writeShort(mEntries.size());
+        for (Entry entry : mEntries) {
+            out.writeByte(entry.mKind.ordinal());
+            switch (entry.mKind) {
+                case FIELD:
+                    out.writeUTF(entry.mName);
+                    break;
+                case METHOD:
+                    out.writeUTF(entry.mName);
+                    out.writeByte(entry.mMethodWeaveType.ordinal());
+                    out.writeByte(entry.mPriority.ordinal());
+                    writeOptionalUTF(out, entry.mRename);
+                    break;
+                default:
+                    break;
+            }
+            out.writeByte(entry.mArgs.length);
+            for (int arg : entry.mArgs) {
+                out.writeShort(arg);
+            }
+            writeOptionalUTF(out, entry.mStatement);
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads plan written by {@link #write(OutputStream)}.
+     *
+     * @return plan or <code>null</code> if it was written in unsupported version
+     */
+    public static WeavePlan read(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(inputStream);
+        if (in.readUnsignedShort() != VERSION) {
+            return null;
+        }
+        String targetName = in.readUTF();
+
+        int typeCount = in.readUnsignedShort();
+        List<String> types = new ArrayList<>(typeCount);
+        for (int i = 0; i < typeCount; i++) {
+            types.add(in.readUTF());
+        }
+
+        int entryCount = in.readUnsignedShort();
+        List<Entry> entries = new ArrayList<>(entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            Kind kind = Kind.values()[in.readUnsignedByte()];
+            String name = null;
+            String rename = null;
+            WeaveBuilder.MethodWeaveType methodWeaveType = null;
+            WeaveBuilder.WeavePriority priority = null;
+            switch (kind) {
+                case FIELD:
+                    name = in.readUTF();
+                    break;
+                case METHOD:
+                    name = in.readUTF();
+                    methodWeaveType = WeaveBuilder.MethodWeaveType.values()[in.readUnsignedByte()];
+                    priority = WeaveBuilder.WeavePriority.values()[in.readUnsignedByte()];
+                    rename = readOptionalUTF(in);
+                    break;
+                default:
+                    break;
+            }
+            int[] args = new int[in.readUnsignedByte()];
+            for (int j = 0; j < args.length; j++) {
+                args[j] = in.readUnsignedShort();
+            }
+            String statement = readOptionalUTF(in);
+            entries.add(new Entry(kind, name, rename, methodWeaveType, priority, args, statement));
+        }
+
+        return new WeavePlan(targetName, Collections.unmodifiableList(types), Collections.unmodifiableList(entries));
+    }
+
+    private static void writeOptionalUTF(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readOptionalUTF(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Class {@link Builder} creates {@link WeavePlan} from weaves of generated helper or from values of {@link Weave}
+     * annotations of compiled helper.
+     */
+    public static final class Builder {
+
+        private final String mTargetName;
+        private final List<String> mTypes = new ArrayList<>();
+        private final Map<String, Integer> mTypeIndexes = new HashMap<>();
+        private final List<Entry> mFieldEntries = new ArrayList<>();
+        private final List<SortableEntry> mMethodEntries = new ArrayList<>();
+
+        /**
+         * Constructor
+         *
+         * @param targetName Binary name of the class helper weaves into.
+         */
+        public Builder(String targetName) {
+            mTargetName = targetName;
+        }
+
+        /**
+         * Adds weave of a helper field.
+         */
+        public Builder addFieldWeave(String fieldName, WeaveBuilder.WeaveSpec weave) {
+            // fields are woven before methods
+            mFieldEntries.add(createEntry(fieldName, weave));
+            return this;
+        }
+
+        /**
+         * Adds weave of a helper method.
+         */
+        public Builder addMethodWeave(WeaveBuilder.WeaveSpec weave) {
+            mMethodEntries.add(new SortableEntry(weave.getInto(), createEntry(null, weave)));
+            return this;
+        }
+
+        /**
+         * Adds {@link Weave} annotation of a helper field.
+         */
+        public Builder addFieldWeave(String fieldName, String into, List<String> args, String statement) {
+            if (Weave.WEAVE_FIELD.equals(into)) {
+                mFieldEntries.add(new Entry(Kind.FIELD, fieldName, null, null, null, new int[0], toStatement(statement)));
+            } else {
+                // fields are woven before methods
+                mFieldEntries.add(createEntry(into, args, statement));
+            }
+            return this;
+        }
+
+        /**
+         * Adds {@link Weave} annotation of a helper method.
+         */
+        public Builder addMethodWeave(String into, List<String> args, String statement) {
+            mMethodEntries.add(new SortableEntry(into, createEntry(into, args, statement)));
+            return this;
+        }
+
+        public WeavePlan build() {
+            // higher priority should be first
+            List<SortableEntry> sorted = new ArrayList<>(mMethodEntries);
+            Collections.sort(sorted, new Comparator<SortableEntry>() {
+                @Override
+                public int compare(SortableEntry l, SortableEntry r) {
+                    return -l.mInto.compareTo(r.mInto);
+                }
+            });
+
+            List<Entry> entries = new ArrayList<>(mFieldEntries.size() + sorted.size());
+            entries.addAll(mFieldEntries);
+            for (SortableEntry entry : sorted) {
+                entries.add(entry.mEntry);
+            }
+            return new WeavePlan(mTargetName, Collections.unmodifiableList(new ArrayList<>(mTypes)),
+                    Collections.unmodifiableList(entries));
+        }
+
+        private Entry createEntry(String fieldName, WeaveBuilder.WeaveSpec weave) {
+            if (weave.isField()) {
+                return new Entry(Kind.FIELD, fieldName, null, null, null, new int[0], toStatement(weave.getStatement()));
+            }
+            int[] argIndexes = getTypeIndexes(weave.getArgs());
+            if (weave.isConstructor()) {
+                return new Entry(Kind.CONSTRUCTOR, null, null, null, null, argIndexes, toStatement(weave.getStatement()));
+            }
+            return new Entry(Kind.METHOD, weave.getMethodName(), weave.getRename(), weave.getMethodWeaveType(),
+                    weave.getPriority(), argIndexes, toStatement(weave.getStatement()));
+        }
+
+        private Entry createEntry(String into, List<String> args, String statement) {
+            int[] argIndexes = getTypeIndexes(args);
+
+            if (Weave.WEAVE_CONSTRUCTOR.equals(into)) {
+                return new Entry(Kind.CONSTRUCTOR, null, null, null, null, argIndexes, toStatement(statement));
+            }
+
+            WeaveParser.Into parsedInto = WeaveParser.parseInto(into);
+            if (parsedInto.getMethodWeaveType() == null || parsedInto.getPriority() == null) {
+                throw new IllegalArgumentException(String.format("Invalid weave into '%s'", into));
+            }
+            return new Entry(Kind.METHOD, parsedInto.getMethodName(), parsedInto.getRename(),
+                    parsedInto.getMethodWeaveType(), parsedInto.getPriority(), argIndexes, toStatement(statement));
+        }
+
+        private int[] getTypeIndexes(List<String> types) {
+            int[] indexes = new int[types.size()];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = getTypeIndex(types.get(i));
+            }
+            return indexes;
+        }
+
+        private int getTypeIndex(String type) {
+            Integer index = mTypeIndexes.get(type);
+            if (index == null) {
+                index = mTypes.size();
+                mTypes.add(type);
+                mTypeIndexes.put(type, index);
+            }
+            return index;
+        }
+
+        private static String toStatement(String statement) {
+            if (statement == null || statement.isEmpty()) {
+                return null;
+            }
+            // statements use apostrophes instead of quotes
+            return statement.replace('\'', '"');
+        }
+    }
+
+    private static final class SortableEntry {
+
+        private final String mInto;
+        private final Entry mEntry;
+
+        SortableEntry(String into, Entry entry) {
+            mInto = into;
+            mEntry = entry;
+        }
+    }
+}
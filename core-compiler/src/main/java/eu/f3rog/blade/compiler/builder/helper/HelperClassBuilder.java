@@ -1,17 +1,27 @@
 package eu.f3rog.blade.compiler.builder.helper;
 
+import com.squareup.javapoet.AnnotationSpec;
 import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.TypeSpec;
 
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
+import javax.annotation.processing.Filer;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
 
 import eu.f3rog.blade.compiler.builder.BaseClassBuilder;
+import eu.f3rog.blade.compiler.builder.annotation.WeaveBuilder;
+import eu.f3rog.blade.compiler.builder.annotation.WeavePlan;
 import eu.f3rog.blade.compiler.name.GCN;
 import eu.f3rog.blade.compiler.util.ProcessorError;
+import eu.f3rog.blade.compiler.util.ProcessorUtils;
+import eu.f3rog.blade.core.Weave;
 
 /**
  * Class {@link HelperClassBuilder}
@@ -25,10 +35,13 @@ public class HelperClassBuilder
 
     private final TypeElement mTypeElement;
     private final Map<Class<? extends IHelperModule>, IHelperModule> mImplementations = new HashMap<>();
+    private WeavePlan mWeavePlan;
 
     public HelperClassBuilder(ClassName className, TypeElement e) throws ProcessorError {
         super(GCN.HELPER, className);
         mTypeElement = e;
+        // helper depends only on its class => it can be processed incrementally
+        getBuilder().addOriginatingElement(e);
     }
 
     @Override
@@ -82,15 +95,51 @@ public class HelperClassBuilder
     }
 
     @Override
-    public void build() throws ProcessorError, IOException {
+    public JavaFile createJavaFile() throws ProcessorError {
         boolean hasSomething = false;
         for (Map.Entry<Class<? extends IHelperModule>, IHelperModule> entry : mImplementations.entrySet()) {
             hasSomething |= entry.getValue().implement(this);
         }
         // do not build empty helper class
-        if (hasSomething) {
-            super.build();
+        if (!hasSomething) {
+            return null;
+        }
+        JavaFile javaFile = super.createJavaFile();
+        mWeavePlan = createWeavePlan(javaFile.typeSpec);
+        return javaFile;
+    }
+
+    /**
+     * Registers built helper, so weaving can find it. Index entry contains {@link WeavePlan} of the helper.
+     * Nothing is done if helper was not built.
+     */
+    public void writeIndexEntry(Filer filer) throws IOException {
+        if (mWeavePlan == null) {
+            return;
+        }
+        HelperIndex.write(filer, ProcessorUtils.fullName(getClassName()), mTypeElement, mWeavePlan);
+    }
+
+    /**
+     * Creates {@link WeavePlan} from weaves of given helper. They are the same as its {@link Weave} annotations.
+     */
+    private WeavePlan createWeavePlan(TypeSpec helper) {
+        WeavePlan.Builder plan = new WeavePlan.Builder(ProcessorUtils.getElementUtils().getBinaryName(mTypeElement).toString());
+        for (FieldSpec field : helper.fieldSpecs) {
+            for (AnnotationSpec annotation : field.annotations) {
+                for (WeaveBuilder.WeaveSpec weave : WeaveBuilder.getWeaves(annotation)) {
+                    plan.addFieldWeave(field.name, weave);
+                }
+            }
+        }
+        for (MethodSpec method : helper.methodSpecs) {
+            for (AnnotationSpec annotation : method.annotations) {
+                for (WeaveBuilder.WeaveSpec weave : WeaveBuilder.getWeaves(annotation)) {
+                    plan.addMethodWeave(weave);
+                }
+            }
         }
+        return plan.build();
     }
 
     public TypeElement getTypeElement() {
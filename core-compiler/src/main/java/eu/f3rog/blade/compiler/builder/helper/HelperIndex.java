@@ -0,0 +1,72 @@
+package eu.f3rog.blade.compiler.builder.helper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.annotation.processing.Filer;
+import javax.lang.model.element.TypeElement;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import eu.f3rog.blade.compiler.builder.annotation.WeavePlan;
+
+/**
+ * Class {@link HelperIndex} describes index of generated helper classes.
+ * <p>
+ * Each helper has its own entry named by binary name of the helper and containing its {@link WeavePlan}.
+ * Bytecode weaving uses this index, so it does not have to search for helpers in all compiled classes.
+ *
+ * @author FrantisekGazo
+ */
+public final class HelperIndex {
+
+    /**
+     * Directory (relative to class output) containing all index entries.
+     */
+    public static final String DIRECTORY = "META-INF/blade/helpers";
+
+    private HelperIndex() {
+    }
+
+    /**
+     * Returns path of index entry for given helper.
+     */
+    public static String getEntryPath(String helperName) {
+        return DIRECTORY + "/" + helperName;
+    }
+
+    /**
+     * Writes index entry for given helper.
+     *
+     * @param filer      Filer used for creating the entry.
+     * @param helperName Binary name of the helper class.
+     * @param target     Class the helper weaves into. It is also originating element of the entry.
+     * @param plan       Weave plan of the helper.
+     */
+    public static void write(Filer filer, String helperName, TypeElement target, WeavePlan plan) throws IOException {
+        FileObject entry = filer.createResource(StandardLocation.CLASS_OUTPUT, "", getEntryPath(helperName), target);
+        OutputStream out = new BufferedOutputStream(entry.openOutputStream());
+        try {
+            plan.write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads weave plan from given index entry.
+     *
+     * @return plan or <code>null</code> if entry has unsupported format
+     */
+    public static WeavePlan read(InputStream entry) throws IOException {
+        InputStream in = new BufferedInputStream(entry);
+        try {
+            return WeavePlan.read(in);
+        } finally {
+            in.close();
+        }
+    }
+}
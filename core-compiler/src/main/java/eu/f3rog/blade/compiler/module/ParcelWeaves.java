@@ -0,0 +1,53 @@
+package eu.f3rog.blade.compiler.module;
+
+import android.os.Parcel;
+
+import eu.f3rog.blade.compiler.builder.annotation.WeaveBuilder;
+
+/**
+ * Class {@link ParcelWeaves} defines weaves of helpers of classes annotated with <code>@Parcel</code>.
+ * They are shared by the annotation processor and Blade plugin, which generates the helpers from bytecode.
+ *
+ * @author FrantisekGazo
+ */
+public final class ParcelWeaves {
+
+    public static final String FIELD_NAME_CREATOR = "CREATOR";
+    public static final String METHOD_NAME_WRITE_TO_PARCEL = "writeToParcel";
+    public static final String METHOD_NAME_READ_FROM_PARCEL = "readFromParcel";
+
+    /**
+     * Returns weave of helper field with creator of given target.
+     *
+     * @param helperName Full name of the helper.
+     */
+    public static WeaveBuilder.IWeaveBuild weaveCreator(final String helperName) {
+        return WeaveBuilder.weave().field()
+                .withStatement("%s.%s", helperName, FIELD_NAME_CREATOR);
+    }
+
+    /**
+     * Returns weave of helper method which writes given target into parcel.
+     *
+     * @param helperName Full name of the helper.
+     */
+    public static WeaveBuilder.IWeaveBuild weaveWriteToParcel(final String helperName) {
+        return WeaveBuilder.weave().method(METHOD_NAME_WRITE_TO_PARCEL, Parcel.class, int.class)
+                .placed(WeaveBuilder.MethodWeaveType.AFTER_SUPER)
+                .withStatement("%s.%s(this, $1);", helperName, METHOD_NAME_WRITE_TO_PARCEL);
+    }
+
+    /**
+     * Returns weave of helper method which reads given target from parcel.
+     *
+     * @param helperName Full name of the helper.
+     */
+    public static WeaveBuilder.IWeaveBuild weaveReadFromParcel(final String helperName) {
+        return WeaveBuilder.weave().constructor(Parcel.class)
+                .withStatement("%s.%s(this, $1);", helperName, METHOD_NAME_READ_FROM_PARCEL);
+    }
+
+    private ParcelWeaves() {
+        throw new IllegalAccessError("This class cannot be instantiated!");
+    }
+}
@@ -0,0 +1,120 @@
+package eu.f3rog.blade.compiler.module;
+
+import android.os.Bundle;
+import android.os.Parcelable;
+
+import eu.f3rog.blade.compiler.builder.annotation.WeaveBuilder;
+
+/**
+ * Class {@link StateWeaves} defines weaves of helpers of classes with <code>@State</code> fields.
+ * They are shared by the annotation processor and Blade plugin, which generates the helpers from bytecode.
+ *
+ * @author FrantisekGazo
+ */
+public final class StateWeaves {
+
+    public enum HelpedClassType {
+        ACTIVITY_OR_FRAGMENT, VIEW, PRESENTER, OTHER
+    }
+
+    public static final String PRESENTER_CLASS_NAME = "blade.mvp.IPresenter";
+
+    public static final String METHOD_NAME_SAVE_SATE = "saveState";
+    public static final String METHOD_NAME_RESTORE_SATE = "restoreState";
+
+    public static final String WEAVE_onSaveInstanceState = "onSaveInstanceState";
+    public static final String WEAVE_onRestoreInstanceState = "onRestoreInstanceState";
+    public static final String WEAVE_onCreate = "onCreate";
+    public static final String WEAVE_onSaveState = "onSaveState";
+
+    public static final String STATEFUL_ID_FORMAT = "<Stateful-%s>";
+
+    /**
+     * Returns weave of helper method which saves state of given target.
+     *
+     * @param helperName         Full name of the helper.
+     * @param hasSaveStateMethod <code>true</code> if view declares its own {@link #WEAVE_onSaveInstanceState} method.
+     */
+    public static WeaveBuilder.IWeaveBuild weaveSave(final HelpedClassType type,
+                                                     final String helperName,
+                                                     final boolean hasSaveStateMethod) {
+        switch (type) {
+            case ACTIVITY_OR_FRAGMENT:
+                return WeaveBuilder.weave().method(WEAVE_onSaveInstanceState, Bundle.class)
+                        .placed(WeaveBuilder.MethodWeaveType.AFTER_BODY)
+                        .withStatement("%s.%s(this, $1);", helperName, METHOD_NAME_SAVE_SATE);
+
+            case PRESENTER:
+                return WeaveBuilder.weave().method(WEAVE_onSaveState, Object.class)
+                        .placed(WeaveBuilder.MethodWeaveType.AFTER_BODY)
+                        .withStatement("%s.%s(this, (%s) $1);", helperName, METHOD_NAME_SAVE_SATE, Bundle.class.getCanonicalName());
+            case VIEW:
+                if (hasSaveStateMethod) {
+                    return WeaveBuilder.weave().method(WEAVE_onSaveInstanceState)
+                            .renameExistingTo(WEAVE_onSaveInstanceState + "_BladeState")
+                            .withStatement("%s bundle = new %s();", Bundle.class.getName(), Bundle.class.getName())
+                            .withStatement("bundle.putParcelable('USER_STATE', this.onSaveInstanceState_BladeState());")
+                            .withStatement("%s.%s(this, bundle);", helperName, METHOD_NAME_SAVE_SATE)
+                            .withStatement("return bundle;");
+                } else {
+                    return WeaveBuilder.weave().method(WEAVE_onSaveInstanceState)
+                            .withStatement("%s bundle = new %s();", Bundle.class.getName(), Bundle.class.getName())
+                            .withStatement("bundle.putParcelable('PARENT_STATE', super.onSaveInstanceState());")
+                            .withStatement("%s.%s(this, bundle);", helperName, METHOD_NAME_SAVE_SATE)
+                            .withStatement("return bundle;");
+                }
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * Returns weave of helper method which restores state of given target.
+     *
+     * @param helperName            Full name of the helper.
+     * @param hasRestoreStateMethod <code>true</code> if view declares its own {@link #WEAVE_onRestoreInstanceState} method.
+     */
+    public static WeaveBuilder.IWeaveBuild weaveRestore(final HelpedClassType type,
+                                                        final String helperName,
+                                                        final boolean hasRestoreStateMethod) {
+        switch (type) {
+            case ACTIVITY_OR_FRAGMENT:
+                return WeaveBuilder.weave().method(WEAVE_onCreate, Bundle.class)
+                        .withPriority(WeaveBuilder.WeavePriority.HIGHER)
+                        .withStatement("%s.%s(this, $1);", helperName, METHOD_NAME_RESTORE_SATE);
+
+            case PRESENTER:
+                return WeaveBuilder.weave().method(WEAVE_onCreate, Object.class)
+                        .withStatement("%s.%s(this, (%s) $1);", helperName, METHOD_NAME_RESTORE_SATE, Bundle.class.getCanonicalName());
+            case VIEW:
+                if (hasRestoreStateMethod) {
+                    return WeaveBuilder.weave().method(WEAVE_onRestoreInstanceState, Parcelable.class)
+                            .renameExistingTo(WEAVE_onRestoreInstanceState + "_BladeState")
+                            .withStatement("if ($1 instanceof %s) {", Bundle.class.getName())
+                            .withStatement("%s bundle = (%s) $1;", Bundle.class.getName(), Bundle.class.getName())
+                            .withStatement("%s.%s(this, bundle);", helperName, METHOD_NAME_RESTORE_SATE)
+                            .withStatement("this.onRestoreInstanceState_BladeState(bundle.getParcelable('USER_STATE'));")
+                            .withStatement("} else {")
+                            .withStatement("this.onRestoreInstanceState_BladeState($1);")
+                            .withStatement("}")
+                            .withStatement("return;");
+                } else {
+                    return WeaveBuilder.weave().method(WEAVE_onRestoreInstanceState, Parcelable.class)
+                            .withStatement("if ($1 instanceof %s) {", Bundle.class.getName())
+                            .withStatement("%s bundle = (%s) $1;", Bundle.class.getName(), Bundle.class.getName())
+                            .withStatement("%s.%s(this, bundle);", helperName, METHOD_NAME_RESTORE_SATE)
+                            .withStatement("super.onRestoreInstanceState(bundle.getParcelable('PARENT_STATE'));")
+                            .withStatement("} else {")
+                            .withStatement("super.onRestoreInstanceState($1);")
+                            .withStatement("}")
+                            .withStatement("return;");
+                }
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
+    private StateWeaves() {
+        throw new IllegalAccessError("This class cannot be instantiated!");
+    }
+}
@@ -35,6 +35,21 @@ public abstract class BaseProcessor extends AbstractProcessor {
      */
     protected abstract void finish(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) throws ProcessorError, IOException;
 
+    /**
+     * Called at the start of each round. State of this processor has to be made available to the current thread here.
+     */
+    protected void startRound() {
+        ProcessorUtils.setProcessingEnvironment(mProcessingEnvironment);
+    }
+
+    /**
+     * Called at the end of each round. Nothing may stay bound to the current thread, because it can be reused
+     * by another compilation.
+     */
+    protected void endRound() {
+        ProcessorUtils.setProcessingEnvironment(null);
+    }
+
     @Override
     public synchronized void init(ProcessingEnvironment processingEnv) {
         super.init(processingEnv);
@@ -51,6 +66,7 @@ public abstract class BaseProcessor extends AbstractProcessor {
 
     @Override
     public final boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        startRound();
         try {
             if (!mProcessingStarted) {
                 prepare(annotations, roundEnv);
@@ -66,6 +82,8 @@ public abstract class BaseProcessor extends AbstractProcessor {
             error(pe);
         } catch (IOException e) {
             throw new RuntimeException(e);
+        } finally {
+            endRound();
         }
 
         return false;
@@ -9,11 +9,11 @@ import com.squareup.javapoet.MethodSpec;
 import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeVariableName;
-import com.sun.tools.javac.code.Symbol;
-import com.sun.tools.javac.code.Type;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.annotation.processing.Filer;
@@ -27,7 +27,9 @@ import javax.lang.model.element.VariableElement;
 import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.MirroredTypeException;
 import javax.lang.model.type.MirroredTypesException;
+import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.TypeVariable;
 import javax.lang.model.util.Elements;
 import javax.lang.model.util.Types;
 
@@ -45,22 +47,68 @@ public class ProcessorUtils {
         T get(A obj);
     }
 
-    private static ProcessingEnvironment sProcessingEnvironment;
+    /**
+     * Environment of the processor running on the current thread. Processors compiling in parallel
+     * (e.g. in one Gradle daemon) share this class, so each one sees only its own environment.
+     */
+    private static final ThreadLocal<ProcessingEnvironment> sProcessingEnvironment = new ThreadLocal<>();
+    /**
+     * Caches of the current processing round (see {@link #getCache(String)}).
+     */
+    private static final ThreadLocal<Map<String, Map<?, ?>>> sCaches = new ThreadLocal<>();
 
+    private static final String CACHE_SUPER_TYPES = "superTypes";
+
+    /**
+     * Sets environment of the current thread. It has to be cleared when processing round ends.
+     */
     public static void setProcessingEnvironment(ProcessingEnvironment processingEnvironment) {
-        sProcessingEnvironment = processingEnvironment;
+        if (processingEnvironment != null) {
+            sProcessingEnvironment.set(processingEnvironment);
+            sCaches.set(new HashMap<String, Map<?, ?>>());
+        } else {
+            sProcessingEnvironment.remove();
+            sCaches.remove();
+        }
+    }
+
+    /**
+     * Returns cache with given name. It is kept until the end of processing round, so results of queries repeated
+     * for many classes (e.g. type hierarchy) can be reused by all modules.
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> Map<K, V> getCache(String name) {
+        Map<String, Map<?, ?>> caches = sCaches.get();
+        if (caches == null) {
+            // not processing => nothing is kept
+            return new HashMap<>();
+        }
+        Map<K, V> cache = (Map<K, V>) caches.get(name);
+        if (cache == null) {
+            cache = new HashMap<>();
+            caches.put(name, cache);
+        }
+        return cache;
+    }
+
+    private static ProcessingEnvironment getProcessingEnvironment() {
+        ProcessingEnvironment processingEnvironment = sProcessingEnvironment.get();
+        if (processingEnvironment == null) {
+            throw new IllegalStateException("Processing environment is available only during processing!");
+        }
+        return processingEnvironment;
     }
 
     public static Elements getElementUtils() {
-        return sProcessingEnvironment.getElementUtils();
+        return getProcessingEnvironment().getElementUtils();
     }
 
     public static Types getTypeUtils() {
-        return sProcessingEnvironment.getTypeUtils();
+        return getProcessingEnvironment().getTypeUtils();
     }
 
     public static Filer getFiler() {
-        return sProcessingEnvironment.getFiler();
+        return getProcessingEnvironment().getFiler();
     }
 
     public static String fullName(ClassName className) {
@@ -173,7 +221,7 @@ public class ProcessorUtils {
         } else {
             className = typeName.toString();
         }
-        return sProcessingEnvironment.getElementUtils().getTypeElement(className);
+        return getElementUtils().getTypeElement(className);
     }
 
     public static boolean isActivitySubClass(TypeElement inspectedType) {
@@ -196,53 +244,57 @@ public class ProcessorUtils {
      * Finds requested super-type or interface of given type.
      */
     public static TypeName getSuperType(TypeElement inspectedType, Class lookupClass) {
-        return getSuperType(inspectedType.asType(), ClassName.get(lookupClass));
+        return getSuperType(inspectedType, ClassName.get(lookupClass));
     }
 
     public static TypeName getSuperType(TypeElement inspectedType, TypeName lookupType) {
-        return getSuperType(inspectedType.asType(), lookupType);
+        return getSuperTypes(inspectedType).get(lookupType);
     }
 
-    private static TypeName getSuperType(TypeMirror inspectedType, TypeName lookupType) {
-        TypeName inspectedTypeName = ClassName.get(inspectedType);
-        if (areSameType(inspectedTypeName, lookupType)) {
-            return inspectedTypeName;
+    /**
+     * Finds all super-types and interfaces of given type (including the type itself).
+     * Hierarchy of each type is walked only once per processing round.
+     *
+     * @return super-types mapped by their raw types
+     */
+    private static Map<TypeName, TypeName> getSuperTypes(TypeElement inspectedType) {
+        Map<TypeElement, Map<TypeName, TypeName>> cache = getCache(CACHE_SUPER_TYPES);
+        Map<TypeName, TypeName> superTypes = cache.get(inspectedType);
+        if (superTypes == null) {
+            superTypes = new HashMap<>();
+            // type arguments of super-types depend on the inspected type => hierarchy of each type is walked separately
+            collectSuperTypes(inspectedType.asType(), superTypes);
+            cache.put(inspectedType, superTypes);
         }
+        return superTypes;
+    }
 
-        List<? extends TypeMirror> supertypes = sProcessingEnvironment.getTypeUtils().directSupertypes(inspectedType);
-        for (int i = 0, c = supertypes.size(); i < c; i++) {
-            TypeMirror superType = supertypes.get(i);
-            TypeName tn = getSuperType(superType, lookupType);
-            if (tn != null) {
-                return tn;
-            }
+    private static void collectSuperTypes(TypeMirror inspectedType, Map<TypeName, TypeName> superTypes) {
+        TypeName inspectedTypeName = ClassName.get(inspectedType);
+        TypeName rawType = (inspectedTypeName instanceof ParameterizedTypeName)
+                ? ((ParameterizedTypeName) inspectedTypeName).rawType
+                : inspectedTypeName;
+        // the first one found (depth-first) is used
+        if (superTypes.containsKey(rawType)) {
+            return;
         }
+        superTypes.put(rawType, inspectedTypeName);
 
-        return null;
-    }
-
-    private static boolean areSameType(TypeName typeName1, TypeName typeName2) {
-        if (typeName1 instanceof ParameterizedTypeName) {
-            ParameterizedTypeName paramTypeName = (ParameterizedTypeName) typeName1;
-            return paramTypeName.rawType.equals(typeName2);
+        List<? extends TypeMirror> supertypes = getTypeUtils().directSupertypes(inspectedType);
+        for (int i = 0, c = supertypes.size(); i < c; i++) {
+            collectSuperTypes(supertypes.get(i), superTypes);
         }
-        return typeName1.equals(typeName2);
     }
 
     /**
      * Returns type of given <code>variableElement</code> or bound type if it is generic type.
      */
-    public static Type getBoundedType(VariableElement variableElement) {
-        if (variableElement instanceof Symbol.VarSymbol) {
-            Symbol.VarSymbol arg = (Symbol.VarSymbol) variableElement;
-            Type type = arg.type;
-            if (type.getUpperBound() != null) {
-                type = type.getUpperBound();
-            }
-            return type;
-        } else {
-            throw new IllegalStateException();
+    public static TypeMirror getBoundedType(VariableElement variableElement) {
+        TypeMirror type = variableElement.asType();
+        if (type.getKind() == TypeKind.TYPEVAR) {
+            type = ((TypeVariable) type).getUpperBound();
         }
+        return type;
     }
 
     public static TypeVariableName[] getTypeParameterNames(TypeName type) {
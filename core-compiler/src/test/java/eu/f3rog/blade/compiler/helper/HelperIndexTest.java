@@ -0,0 +1,117 @@
+package eu.f3rog.blade.compiler.helper;
+
+import android.content.Context;
+import android.view.View;
+
+import com.google.common.io.ByteSource;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+
+import blade.State;
+import eu.f3rog.blade.compiler.BaseTest;
+import eu.f3rog.blade.compiler.BladeProcessor;
+import eu.f3rog.blade.compiler.builder.annotation.WeavePlan;
+import eu.f3rog.blade.compiler.builder.helper.HelperIndex;
+
+import static eu.f3rog.blade.compiler.util.File.file;
+
+/**
+ * Class {@link HelperIndexTest}
+ *
+ * @author FrantisekGazo
+ */
+public final class HelperIndexTest extends BaseTest {
+
+    @Test
+    public void topLevelClass() throws IOException {
+        JavaFileObject input = file("com.example", "MyClass")
+                .imports(
+                        State.class, "S"
+                )
+                .body(
+                        "public class $T {",
+                        "",
+                        "   @$S String mText;",
+                        "}"
+                );
+
+        assertFiles(input)
+                .with(BladeProcessor.Module.STATE)
+                .compilesWithoutError()
+                .and()
+                .generatesFileNamed(StandardLocation.CLASS_OUTPUT, "", HelperIndex.getEntryPath("com.example.MyClass_Helper"))
+                .withContents(content(new WeavePlan.Builder("com.example.MyClass").build()));
+    }
+
+    @Test
+    public void innerClass() throws IOException {
+        JavaFileObject input = file("com.example", "A")
+                .imports(
+                        State.class, "S"
+                )
+                .body(
+                        "public class $T {",
+                        "",
+                        "   public static class B {",
+                        "",
+                        "       @$S String mText;",
+                        "   }",
+                        "}"
+                );
+
+        assertFiles(input)
+                .with(BladeProcessor.Module.STATE)
+                .compilesWithoutError()
+                .and()
+                .generatesFileNamed(StandardLocation.CLASS_OUTPUT, "", HelperIndex.getEntryPath("com.example.A_B_Helper"))
+                .withContents(content(new WeavePlan.Builder("com.example.A$B").build()));
+    }
+
+    @Test
+    public void weavePlan() throws IOException {
+        JavaFileObject input = file("com.example", "A")
+                .imports(
+                        View.class,
+                        Context.class,
+                        State.class, "S"
+                )
+                .body(
+                        "public class $T {",
+                        "",
+                        "   public class B extends View {",
+                        "",
+                        "       @$S String mText;",
+                        "",
+                        "       public B(Context c) {super(c);}",
+                        "   }",
+                        "}"
+                );
+
+        WeavePlan plan = new WeavePlan.Builder("com.example.A$B")
+                .addMethodWeave("0^onSaveInstanceState", Collections.<String>emptyList(),
+                        "android.os.Bundle bundle = new android.os.Bundle();bundle.putParcelable('PARENT_STATE', super.onSaveInstanceState());com.example.A_B_Helper.saveState(this, bundle);return bundle;")
+                .addMethodWeave("0^onRestoreInstanceState", Collections.singletonList("android.os.Parcelable"),
+                        "if ($1 instanceof android.os.Bundle) {android.os.Bundle bundle = (android.os.Bundle) $1;com.example.A_B_Helper.restoreState(this, bundle);super.onRestoreInstanceState(bundle.getParcelable('PARENT_STATE'));} else {super.onRestoreInstanceState($1);}return;")
+                .build();
+
+        assertFiles(input)
+                .with(BladeProcessor.Module.STATE)
+                .compilesWithoutError()
+                .and()
+                .generatesFileNamed(StandardLocation.CLASS_OUTPUT, "", HelperIndex.getEntryPath("com.example.A_B_Helper"))
+                .withContents(content(plan));
+    }
+
+    private static ByteSource content(WeavePlan plan) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        plan.write(out);
+        return ByteSource.wrap(out.toByteArray());
+    }
+}
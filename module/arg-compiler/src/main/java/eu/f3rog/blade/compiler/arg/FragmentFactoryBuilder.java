@@ -3,7 +3,6 @@ package eu.f3rog.blade.compiler.arg;
 import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.MethodSpec;
 import com.squareup.javapoet.TypeName;
-import com.sun.tools.javac.code.Type;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -12,6 +11,7 @@ import javax.lang.model.element.Element;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
 
 import blade.Arg;
 import eu.f3rog.blade.compiler.builder.BaseClassBuilder;
@@ -47,6 +47,7 @@ public final class FragmentFactoryBuilder
         if (typeElement.getModifiers().contains(Modifier.ABSTRACT)) {
             return;
         }
+        getBuilder().addOriginatingElement(typeElement);
 
         List<VariableElement> args = new ArrayList<>();
 
@@ -83,7 +84,7 @@ public final class FragmentFactoryBuilder
 
         for (int i = 0, c = fields.size(); i < c; i++) {
             final VariableElement field = fields.get(i);
-            final Type type = ProcessorUtils.getBoundedType(field);
+            final TypeMirror type = ProcessorUtils.getBoundedType(field);
             final TypeName typeName = ClassName.get(type);
             final String name = field.getSimpleName().toString();
 
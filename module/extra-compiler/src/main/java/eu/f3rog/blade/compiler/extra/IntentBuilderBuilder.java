@@ -7,7 +7,6 @@ import android.content.Intent;
 import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.MethodSpec;
 import com.squareup.javapoet.TypeName;
-import com.sun.tools.javac.code.Type;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -16,6 +15,7 @@ import javax.lang.model.element.Element;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
 
 import blade.Extra;
 import eu.f3rog.blade.compiler.builder.BaseClassBuilder;
@@ -55,6 +55,7 @@ public final class IntentBuilderBuilder
         if (typeElement.getModifiers().contains(Modifier.ABSTRACT)) {
             return;
         }
+        getBuilder().addOriginatingElement(typeElement);
 
         List<VariableElement> extras = new ArrayList<>();
 
@@ -104,7 +105,7 @@ public final class IntentBuilderBuilder
 
         for (int i = 0, c = fields.size(); i < c; i++) {
             final VariableElement field = fields.get(i);
-            final Type type = ProcessorUtils.getBoundedType(field);
+            final TypeMirror type = ProcessorUtils.getBoundedType(field);
             final TypeName typeName = ClassName.get(type);
             final String name = field.getSimpleName().toString();
 
@@ -8,7 +8,6 @@ import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.MethodSpec;
 import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeName;
-import com.sun.tools.javac.util.Pair;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -21,15 +20,18 @@ import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
 
 import blade.ParcelIgnore;
-import eu.f3rog.blade.compiler.builder.annotation.WeaveBuilder;
 import eu.f3rog.blade.compiler.builder.helper.BaseHelperModule;
 import eu.f3rog.blade.compiler.builder.helper.HelperClassBuilder;
+import eu.f3rog.blade.compiler.module.ParcelWeaves;
 import eu.f3rog.blade.compiler.parcel.p.CallFormat;
 import eu.f3rog.blade.compiler.parcel.p.Parceler;
 import eu.f3rog.blade.compiler.util.ProcessorError;
 import eu.f3rog.blade.compiler.util.ProcessorUtils;
 import eu.f3rog.blade.compiler.util.StringUtils;
 
+import static eu.f3rog.blade.compiler.module.ParcelWeaves.FIELD_NAME_CREATOR;
+import static eu.f3rog.blade.compiler.module.ParcelWeaves.METHOD_NAME_READ_FROM_PARCEL;
+import static eu.f3rog.blade.compiler.module.ParcelWeaves.METHOD_NAME_WRITE_TO_PARCEL;
 import static eu.f3rog.blade.compiler.util.ProcessorUtils.addClassAsParameter;
 import static eu.f3rog.blade.compiler.util.ProcessorUtils.fullName;
 import static eu.f3rog.blade.compiler.util.ProcessorUtils.hasSomeModifier;
@@ -63,10 +65,17 @@ public class ParcelHelperModule
         }
     }
 
+    private static class MappedCall {
+
+        String format;
+        List<Object> args;
+
+        public MappedCall(String format, List<Object> args) {
+            this.format = format;
+            this.args = args;
+        }
+    }
 
-    private static final String FIELD_NAME_CREATOR = "CREATOR";
-    private static final String METHOD_NAME_WRITE_TO_PARCEL = "writeToParcel";
-    private static final String METHOD_NAME_READ_FROM_PARCEL = "readFromParcel";
 
     private final List<Field> mFields = new ArrayList<>();
 
@@ -166,11 +175,7 @@ public class ParcelHelperModule
                 Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL
         );
 
-        field.addAnnotation(
-                WeaveBuilder.weave().field()
-                        .withStatement("%s.%s", fullName(builder.getClassName()), FIELD_NAME_CREATOR)
-                        .build()
-        );
+        field.addAnnotation(ParcelWeaves.weaveCreator(fullName(builder.getClassName())).build());
         field.initializer("new $T<$T>() {\n" +
                         "\t@$T\n" +
                         "\tpublic $T createFromParcel($T in) {\n" +
@@ -195,12 +200,7 @@ public class ParcelHelperModule
         String parcel = "parcel";
 
         MethodSpec.Builder method = MethodSpec.methodBuilder(METHOD_NAME_WRITE_TO_PARCEL)
-                .addAnnotation(
-                        WeaveBuilder.weave().method(METHOD_NAME_WRITE_TO_PARCEL, Parcel.class, int.class)
-                                .placed(WeaveBuilder.MethodWeaveType.AFTER_SUPER)
-                                .withStatement("%s.%s(this, $1);", fullName(builder.getClassName()), METHOD_NAME_WRITE_TO_PARCEL)
-                                .build()
-                )
+                .addAnnotation(ParcelWeaves.weaveWriteToParcel(fullName(builder.getClassName())).build())
                 .addModifiers(Modifier.PUBLIC, Modifier.STATIC);
 
         addClassAsParameter(method, targetClassName, target);
@@ -214,8 +214,8 @@ public class ParcelHelperModule
                 continue; // TODO : should throw exception or ignore field ?!
             }
 
-            Pair<String, List<Object>> mappedWriteCall = mapCall(field, writeCall, target, parcel);
-            method.addStatement(mappedWriteCall.fst, mappedWriteCall.snd.toArray(new Object[mappedWriteCall.snd.size()]));
+            MappedCall mappedWriteCall = mapCall(field, writeCall, target, parcel);
+            method.addStatement(mappedWriteCall.format, mappedWriteCall.args.toArray(new Object[mappedWriteCall.args.size()]));
         }
 
         builder.getBuilder().addMethod(method.build());
@@ -227,11 +227,7 @@ public class ParcelHelperModule
         String parcel = "parcel";
 
         MethodSpec.Builder method = MethodSpec.methodBuilder(METHOD_NAME_READ_FROM_PARCEL)
-                .addAnnotation(
-                        WeaveBuilder.weave().constructor(Parcel.class)
-                                .withStatement("%s.%s(this, $1);", fullName(builder.getClassName()), METHOD_NAME_READ_FROM_PARCEL)
-                                .build()
-                )
+                .addAnnotation(ParcelWeaves.weaveReadFromParcel(fullName(builder.getClassName())).build())
                 .addModifiers(Modifier.PUBLIC, Modifier.STATIC);
 
         addClassAsParameter(method, targetClassName, target);
@@ -245,9 +241,9 @@ public class ParcelHelperModule
                 continue; // TODO : should throw exception or ignore field ?!
             }
 
-            Pair<String, List<Object>> mappedReadCall = mapCall(field, readCall, target, parcel);
-            String format = mappedReadCall.fst;
-            List<Object> args = mappedReadCall.snd;
+            MappedCall mappedReadCall = mapCall(field, readCall, target, parcel);
+            String format = mappedReadCall.format;
+            List<Object> args = mappedReadCall.args;
             if (field.isAccessible()) {
                 format = String.format("$N.$N = %s", format);
                 args.add(0, field.element.getSimpleName());
@@ -264,7 +260,7 @@ public class ParcelHelperModule
         builder.getBuilder().addMethod(method.build());
     }
 
-    private Pair<String, List<Object>> mapCall(Field field, CallFormat call, String target, String parcel) {
+    private MappedCall mapCall(Field field, CallFormat call, String target, String parcel) {
         Object[] formatArgs = new Object[call.getArgs().length];
         List<Object> args = new ArrayList<>(call.getArgs().length);
         for (int j = 0, d = call.getArgs().length; j < d; j++) {
@@ -316,7 +312,7 @@ public class ParcelHelperModule
 
         String format = String.format(call.getFormat(), formatArgs);
 
-        return new Pair<>(format, args);
+        return new MappedCall(format, args);
     }
 
     private boolean hasParcelableConstructor(TypeElement typeElement) {
@@ -15,6 +15,7 @@ import java.util.Map;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
 import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
 import javax.lang.model.util.Elements;
 
 import eu.f3rog.blade.compiler.util.ProcessorError;
@@ -30,6 +31,8 @@ import static eu.f3rog.blade.compiler.util.ProcessorUtils.isSubClassOf;
  */
 final public class Parceler {
 
+    private static final String CACHE_PARCELERS = "parcelers";
+
     private static final Map<String, ClassParceler> sDirectMapper = new HashMap<>();
     private static final Map<String, ClassParceler> sArrayInheritanceMapper = new HashMap<>();
     private static final List<ClassParceler> sInheritanceLister = new ArrayList<>();
@@ -91,18 +94,33 @@ final public class Parceler {
         sArrayInheritanceMapper.put(cp.type().getCanonicalName(), cp);
     }
 
+    /**
+     * Finds parceler of given field. Parceler depends only on the raw type, so it is resolved once per processing round.
+     */
     private static ClassParceler findParceler(VariableElement ve) throws ProcessorError {
+        TypeName tn = ClassName.get(ve.asType());
+        String key = (tn instanceof ParameterizedTypeName) ? ((ParameterizedTypeName) tn).rawType.toString() : tn.toString();
+
+        Map<String, ClassParceler> cache = ProcessorUtils.getCache(CACHE_PARCELERS);
+        ClassParceler parceler = cache.get(key);
+        if (parceler == null) {
+            parceler = resolveParceler(ve.asType(), tn);
+            cache.put(key, parceler);
+        }
+        return parceler;
+    }
+
+    private static ClassParceler resolveParceler(TypeMirror type, TypeName tn) throws ProcessorError {
         // find direct
-        ClassParceler parceler = sDirectMapper.get(ve.asType().toString());
+        ClassParceler parceler = sDirectMapper.get(type.toString());
         if (parceler != null) {
             return parceler;
         }
 
         // find inheritance
         Elements elementsUtils = ProcessorUtils.getElementUtils();
-        TypeName tn = ClassName.get(ve.asType());
 
-        if (ve.asType().getKind() == TypeKind.ARRAY) { // is array
+        if (type.getKind() == TypeKind.ARRAY) { // is array
             TypeElement te = elementsUtils.getTypeElement(removeArrayParenthesis(tn.toString()));
             if (isSubClassOf(te, Parcelable.class)) {
                 return sArrayInheritanceMapper.get("android.os.Parcelable[]");
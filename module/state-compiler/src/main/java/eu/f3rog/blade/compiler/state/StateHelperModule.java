@@ -1,10 +1,8 @@
 package eu.f3rog.blade.compiler.state;
 
 import android.os.Bundle;
-import android.os.Parcelable;
 import android.view.View;
 
-import com.squareup.javapoet.AnnotationSpec;
 import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.MethodSpec;
 
@@ -19,14 +17,20 @@ import javax.lang.model.element.VariableElement;
 
 import blade.State;
 import eu.f3rog.blade.compiler.ErrorMsg;
-import eu.f3rog.blade.compiler.builder.annotation.WeaveBuilder;
 import eu.f3rog.blade.compiler.builder.helper.BaseHelperModule;
 import eu.f3rog.blade.compiler.builder.helper.HelperClassBuilder;
 import eu.f3rog.blade.compiler.module.BundleUtils;
+import eu.f3rog.blade.compiler.module.StateWeaves;
+import eu.f3rog.blade.compiler.module.StateWeaves.HelpedClassType;
 import eu.f3rog.blade.compiler.util.ProcessorError;
 import eu.f3rog.blade.compiler.util.ProcessorUtils;
 import eu.f3rog.blade.core.BundleWrapper;
 
+import static eu.f3rog.blade.compiler.module.StateWeaves.METHOD_NAME_RESTORE_SATE;
+import static eu.f3rog.blade.compiler.module.StateWeaves.METHOD_NAME_SAVE_SATE;
+import static eu.f3rog.blade.compiler.module.StateWeaves.STATEFUL_ID_FORMAT;
+import static eu.f3rog.blade.compiler.module.StateWeaves.WEAVE_onRestoreInstanceState;
+import static eu.f3rog.blade.compiler.module.StateWeaves.WEAVE_onSaveInstanceState;
 import static eu.f3rog.blade.compiler.util.ProcessorUtils.addClassAsParameter;
 import static eu.f3rog.blade.compiler.util.ProcessorUtils.cannotHaveAnnotation;
 import static eu.f3rog.blade.compiler.util.ProcessorUtils.isActivitySubClass;
@@ -41,21 +45,7 @@ import static eu.f3rog.blade.compiler.util.ProcessorUtils.isSubClassOf;
 public final class StateHelperModule
         extends BaseHelperModule {
 
-    private static final ClassName PRESENTER_CLASS_NAME = ClassName.get("blade.mvp", "IPresenter");
-
-    private enum HelpedClassType {
-        ACTIVITY_OR_FRAGMENT, VIEW, PRESENTER, OTHER
-    }
-
-    private static final String METHOD_NAME_SAVE_SATE = "saveState";
-    private static final String METHOD_NAME_RESTORE_SATE = "restoreState";
-
-    private static final String WEAVE_onSaveInstanceState = "onSaveInstanceState";
-    private static final String WEAVE_onRestoreInstanceState = "onRestoreInstanceState";
-    private static final String WEAVE_onCreate = "onCreate";
-    private static final String WEAVE_onSaveState = "onSaveState";
-
-    private static final String STATEFUL_ID_FORMAT = "<Stateful-%s>";
+    private static final ClassName PRESENTER_CLASS_NAME = ClassName.bestGuess(StateWeaves.PRESENTER_CLASS_NAME);
 
     private final List<BundleUtils.BundledField> mStatefulFields = new ArrayList<>();
     private HelpedClassType mHelpedClassType;
@@ -126,7 +116,7 @@ public final class StateHelperModule
         method.addParameter(Bundle.class, state);
 
         if (mHelpedClassType != HelpedClassType.OTHER) {
-            method.addAnnotation(weaveSave(builder.getClassName()));
+            method.addAnnotation(StateWeaves.weaveSave(mHelpedClassType, builder.getClassName().toString(), mHasSaveStateMethod).build());
         }
 
         final String bundleWrapper = "bundleWrapper";
@@ -150,7 +140,7 @@ public final class StateHelperModule
         method.addParameter(Bundle.class, state);
 
         if (mHelpedClassType != HelpedClassType.OTHER) {
-            method.addAnnotation(weaveRestore(builder.getClassName()));
+            method.addAnnotation(StateWeaves.weaveRestore(mHelpedClassType, builder.getClassName().toString(), mHasRestoreStateMethod).build());
         }
 
         final String bundleWrapper = "bundleWrapper";
@@ -164,81 +154,4 @@ public final class StateHelperModule
         builder.getBuilder().addMethod(method.build());
     }
 
-    private AnnotationSpec weaveSave(final ClassName helperName) {
-        switch (mHelpedClassType) {
-            case ACTIVITY_OR_FRAGMENT:
-                return WeaveBuilder.weave().method(WEAVE_onSaveInstanceState, Bundle.class)
-                        .placed(WeaveBuilder.MethodWeaveType.AFTER_BODY)
-                        .withStatement("%s.%s(this, $1);", helperName, METHOD_NAME_SAVE_SATE)
-                        .build();
-
-            case PRESENTER:
-                return WeaveBuilder.weave().method(WEAVE_onSaveState, Object.class)
-                        .placed(WeaveBuilder.MethodWeaveType.AFTER_BODY)
-                        .withStatement("%s.%s(this, (%s) $1);", helperName, METHOD_NAME_SAVE_SATE, Bundle.class.getCanonicalName())
-                        .build();
-            case VIEW:
-                if (mHasSaveStateMethod) {
-                    return WeaveBuilder.weave().method(WEAVE_onSaveInstanceState)
-                            .renameExistingTo(WEAVE_onSaveInstanceState + "_BladeState")
-                            .withStatement("%s bundle = new %s();", Bundle.class.getName(), Bundle.class.getName())
-                            .withStatement("bundle.putParcelable('USER_STATE', this.onSaveInstanceState_BladeState());")
-                            .withStatement("%s.%s(this, bundle);", helperName, METHOD_NAME_SAVE_SATE)
-                            .withStatement("return bundle;")
-                            .build();
-                } else {
-                    return WeaveBuilder.weave().method(WEAVE_onSaveInstanceState)
-                            .withStatement("%s bundle = new %s();", Bundle.class.getName(), Bundle.class.getName())
-                            .withStatement("bundle.putParcelable('PARENT_STATE', super.onSaveInstanceState());")
-                            .withStatement("%s.%s(this, bundle);", helperName, METHOD_NAME_SAVE_SATE)
-                            .withStatement("return bundle;")
-                            .build();
-                }
-            default:
-                throw new IllegalStateException();
-        }
-    }
-
-    private AnnotationSpec weaveRestore(final ClassName helperName) {
-        switch (mHelpedClassType) {
-            case ACTIVITY_OR_FRAGMENT:
-                return WeaveBuilder.weave().method(WEAVE_onCreate, Bundle.class)
-                        .withPriority(WeaveBuilder.WeavePriority.HIGHER)
-                        .withStatement("%s.%s(this, $1);", helperName, METHOD_NAME_RESTORE_SATE)
-                        .build();
-
-            case PRESENTER:
-                return WeaveBuilder.weave().method(WEAVE_onCreate, Object.class)
-                        .withStatement("%s.%s(this, (%s) $1);", helperName, METHOD_NAME_RESTORE_SATE, Bundle.class.getCanonicalName())
-                        .build();
-            case VIEW:
-                if (mHasRestoreStateMethod) {
-                    return WeaveBuilder.weave().method(WEAVE_onRestoreInstanceState, Parcelable.class)
-                            .renameExistingTo(WEAVE_onRestoreInstanceState + "_BladeState")
-                            .withStatement("if ($1 instanceof %s) {", Bundle.class.getName())
-                            .withStatement("%s bundle = (%s) $1;", Bundle.class.getName(), Bundle.class.getName())
-                            .withStatement("%s.%s(this, bundle);", helperName, METHOD_NAME_RESTORE_SATE)
-                            .withStatement("this.onRestoreInstanceState_BladeState(bundle.getParcelable('USER_STATE'));")
-                            .withStatement("} else {")
-                            .withStatement("this.onRestoreInstanceState_BladeState($1);")
-                            .withStatement("}")
-                            .withStatement("return;")
-                            .build();
-                } else {
-                    return WeaveBuilder.weave().method(WEAVE_onRestoreInstanceState, Parcelable.class)
-                            .withStatement("if ($1 instanceof %s) {", Bundle.class.getName())
-                            .withStatement("%s bundle = (%s) $1;", Bundle.class.getName(), Bundle.class.getName())
-                            .withStatement("%s.%s(this, bundle);", helperName, METHOD_NAME_RESTORE_SATE)
-                            .withStatement("super.onRestoreInstanceState(bundle.getParcelable('PARENT_STATE'));")
-                            .withStatement("} else {")
-                            .withStatement("super.onRestoreInstanceState($1);")
-                            .withStatement("}")
-                            .withStatement("return;")
-                            .build();
-                }
-            default:
-                throw new IllegalStateException();
-        }
-    }
-
 }
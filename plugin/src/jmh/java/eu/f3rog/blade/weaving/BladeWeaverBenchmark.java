@@ -0,0 +1,101 @@
+package eu.f3rog.blade.weaving;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import eu.f3rog.blade.weaving.util.IndexedClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.LoaderClassPath;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Class {@link BladeWeaverBenchmark} measures weaving of generated activities (see {@link SyntheticProject}).
+ * <p>
+ * One operation weaves all activities using a new {@link ClassPool}, so loading of classes is measured too.
+ * Run it using <code>gradlew :plugin:jmh</code> (allocation rate is reported by the GC profiler).
+ *
+ * @author FrantisekGazo
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class BladeWeaverBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int classCount;
+
+    @Param({"source", "bytecode"})
+    public String engine;
+
+    private SyntheticProject mProject;
+    private IndexedClassPath mClassPath;
+    private ClassPool mClassPool;
+
+    @Setup(Level.Trial)
+    public void generate() throws Exception {
+        mProject = SyntheticProject.generate(classCount);
+        mClassPath = new IndexedClassPath(Collections.singletonList(mProject.getDir()));
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws Exception {
+        mClassPath.close();
+        mProject.delete();
+    }
+
+    @Setup(Level.Invocation)
+    public void createClassPool() {
+        // each operation has to weave original classes
+        mClassPool = new ClassPool(null);
+        mClassPool.appendSystemPath();
+        mClassPool.appendClassPath(new LoaderClassPath(getClass().getClassLoader()));
+        mClassPool.appendClassPath(mClassPath);
+    }
+
+    /**
+     * Weaves helpers one by one. Weave plans are read from annotations of helpers.
+     */
+    @Benchmark
+    public void weaveEach(Blackhole blackhole) throws Exception {
+        BladeWeaver weaver = new BladeWeaver(false, BladeWeaver.Engine.from(engine));
+        for (String helperName : mProject.getHelperNames()) {
+            CtClass helperClass = mClassPool.get(helperName);
+            CtClass intoClass = mClassPool.get(helperName.substring(0, helperName.length() - "_Helper".length()));
+            weaver.weave(helperClass, intoClass);
+            blackhole.consume(intoClass);
+        }
+    }
+
+    /**
+     * Weaves all helpers like the transform does, using weave plans from the index.
+     */
+    @Benchmark
+    public Set<CtClass> weaveAll() throws Exception {
+        BladeWeaver weaver = new BladeWeaver(false, BladeWeaver.Engine.from(engine), mProject.getPlans());
+        List<CtClass> helpers = new ArrayList<>(mProject.getHelperNames().size());
+        for (String helperName : mProject.getHelperNames()) {
+            helpers.add(mClassPool.get(helperName));
+        }
+        return weaver.weave(mClassPool, helpers);
+    }
+}
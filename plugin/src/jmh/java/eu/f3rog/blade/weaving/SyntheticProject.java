@@ -0,0 +1,262 @@
+package eu.f3rog.blade.weaving;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import eu.f3rog.blade.compiler.builder.annotation.WeavePlan;
+import eu.f3rog.blade.core.Weave;
+import eu.f3rog.blade.core.Weaves;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtMethod;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+import javassist.bytecode.AnnotationsAttribute;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.Descriptor;
+import javassist.bytecode.LocalVariableAttribute;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.annotation.Annotation;
+import javassist.bytecode.annotation.AnnotationMemberValue;
+import javassist.bytecode.annotation.ArrayMemberValue;
+import javassist.bytecode.annotation.MemberValue;
+import javassist.bytecode.annotation.StringMemberValue;
+
+/**
+ * Class {@link SyntheticProject} generates pairs of activities and their helpers, similar to classes generated by
+ * Blade modules.
+ * <p>
+ * Every helper weaves state saving (like <code>@State</code>), every 2nd also extras (like <code>@Extra</code>),
+ * every 3rd a field and constructor statement and every 4th makes its activity a MVP view with a presenter
+ * injected by Dagger.
+ *
+ * @author FrantisekGazo
+ */
+final class SyntheticProject {
+
+    private static final String PACKAGE = "bench.app";
+    private static final String BUNDLE = "android.os.Bundle";
+
+    private final File mDir;
+    private final List<String> mHelperNames;
+    private final Map<String, WeavePlan> mPlans;
+
+    private SyntheticProject(File dir, List<String> helperNames, Map<String, WeavePlan> plans) {
+        mDir = dir;
+        mHelperNames = helperNames;
+        mPlans = plans;
+    }
+
+    /**
+     * Generates class files of given number of activities and their helpers into a temporary directory.
+     */
+    static SyntheticProject generate(int classCount) throws Exception {
+        File dir = Files.createTempDirectory("blade-jmh").toFile();
+
+        ClassPool classPool = new ClassPool(null);
+        classPool.appendSystemPath();
+        classPool.appendClassPath(new LoaderClassPath(SyntheticProject.class.getClassLoader()));
+
+        List<String> helperNames = new ArrayList<>(classCount);
+        Map<String, WeavePlan> plans = new TreeMap<>();
+        for (int i = 0; i < classCount; i++) {
+            String targetName = String.format("%s.p%d.Activity%d", PACKAGE, i % 100, i);
+            String helperName = targetName + "_Helper";
+            helperNames.add(helperName);
+            plans.put(helperName, generate(classPool, dir, targetName, helperName, i));
+        }
+
+        return new SyntheticProject(dir, Collections.unmodifiableList(helperNames), Collections.unmodifiableMap(plans));
+    }
+
+    private static WeavePlan generate(ClassPool classPool, File dir, String targetName, String helperName, int i)
+            throws Exception {
+        boolean hasExtras = i % 2 == 0;
+        boolean hasField = i % 3 == 0;
+        boolean isMvp = i % 4 == 0;
+
+        // activity
+        CtClass target = classPool.makeClass(targetName, classPool.get("android.app.Activity"));
+        target.addConstructor(CtNewConstructor.defaultConstructor(target));
+        if (isMvp) {
+            target.addInterface(classPool.get("blade.mvp.IView"));
+            CtField presenter = CtField.make("blade.mvp.BasePresenter mPresenter;", target);
+            addAnnotation(presenter.getFieldInfo().getConstPool(), presenter, "javax.inject.Inject");
+            target.addField(presenter);
+        }
+        target.addMethod(CtNewMethod.make("protected void onCreate(android.os.Bundle state) { super.onCreate(state); this.setTitle(\"" + i + "\"); }", target));
+        target.addMethod(CtNewMethod.make("protected void onSaveInstanceState(android.os.Bundle state) { super.onSaveInstanceState(state); }", target));
+        target.addMethod(CtNewMethod.make("protected void onDestroy() { super.onDestroy(); }", target));
+
+        // helper
+        CtClass helper = classPool.makeClass(helperName);
+        if (isMvp) {
+            helper.addInterface(classPool.get("eu.f3rog.blade.mvp.WeavedMvpActivity"));
+        }
+        ConstPool constPool = helper.getClassFile().getConstPool();
+        WeavePlan.Builder plan = new WeavePlan.Builder(targetName);
+
+        if (hasField) {
+            CtField field = CtField.make("java.util.Map mCache;", helper);
+            String statement = "new java.util.HashMap()";
+            addWeaves(constPool, field, weave(constPool, Weave.WEAVE_FIELD, new String[0], statement));
+            helper.addField(field);
+            plan.addFieldWeave(field.getName(), Weave.WEAVE_FIELD, Collections.<String>emptyList(), statement);
+
+            CtMethod init = CtNewMethod.make(String.format("static void init(%s target) { }", targetName), helper);
+            statement = String.format("%s.init(this);", helperName);
+            addWeaves(constPool, init, weave(constPool, Weave.WEAVE_CONSTRUCTOR, new String[0], statement));
+            helper.addMethod(init);
+            plan.addMethodWeave(Weave.WEAVE_CONSTRUCTOR, Collections.<String>emptyList(), statement);
+        }
+
+        if (hasExtras) {
+            CtMethod inject = CtNewMethod.make(String.format("static void inject(%s target, android.content.Intent intent) { }", targetName), helper);
+            String into = "1^onCreate";
+            String statement = String.format("%s.inject(this, this.getIntent());", helperName);
+            addWeaves(constPool, inject, weave(constPool, into, new String[]{BUNDLE}, statement));
+            helper.addMethod(inject);
+            plan.addMethodWeave(into, Collections.singletonList(BUNDLE), statement);
+        }
+
+        CtMethod save = CtNewMethod.make(String.format("static void saveState(%s target, android.os.Bundle state) { }", targetName), helper);
+        CtMethod restore = CtNewMethod.make(String.format("static void restoreState(%s target, android.os.Bundle state) { }", targetName), helper);
+        String saveStatement = String.format("%s.saveState(this, $1);", helperName);
+        String restoreStatement = String.format("%s.restoreState(this, $1);", helperName);
+        addWeaves(constPool, save, weave(constPool, "0^onSaveInstanceState", new String[]{BUNDLE}, saveStatement));
+        addWeaves(constPool, restore,
+                weave(constPool, "0^onCreate", new String[]{BUNDLE}, restoreStatement),
+                weave(constPool, "0_onDestroy", new String[0], "this.setIntent(null);"));
+        helper.addMethod(save);
+        helper.addMethod(restore);
+        plan.addMethodWeave("0^onSaveInstanceState", Collections.singletonList(BUNDLE), saveStatement);
+        plan.addMethodWeave("0^onCreate", Collections.singletonList(BUNDLE), restoreStatement);
+        plan.addMethodWeave("0_onDestroy", Collections.<String>emptyList(), "this.setIntent(null);");
+
+        // Dagger injector
+        if (isMvp) {
+            CtClass injector = classPool.makeClass(targetName + "_MembersInjector");
+            injector.addField(CtField.make("javax.inject.Provider mPresenterProvider;", injector));
+            CtMethod injectMembers = CtNewMethod.make(String.format(
+                    "public void injectMembers(%s instance) { instance.mPresenter = (blade.mvp.BasePresenter) this.mPresenterProvider.get(); }",
+                    targetName), injector);
+            // DaggerMiddleMan refers to the parameter by name, like javac compiles it
+            addLocalVariables(injectMembers, injector.getName(), targetName);
+            injector.addMethod(injectMembers);
+            injector.writeFile(dir.getAbsolutePath());
+            injector.detach();
+        }
+
+        target.writeFile(dir.getAbsolutePath());
+        helper.writeFile(dir.getAbsolutePath());
+        // keep only classes needed by next activities
+        target.detach();
+        helper.detach();
+
+        return plan.build();
+    }
+
+    private static Annotation weave(ConstPool constPool, String into, String[] args, String statement) {
+        Annotation weave = new Annotation(Weave.class.getName(), constPool);
+        weave.addMemberValue("into", new StringMemberValue(into, constPool));
+        ArrayMemberValue argsValue = new ArrayMemberValue(new StringMemberValue(constPool), constPool);
+        MemberValue[] argValues = new MemberValue[args.length];
+        for (int i = 0; i < args.length; i++) {
+            argValues[i] = new StringMemberValue(args[i], constPool);
+        }
+        argsValue.setValue(argValues);
+        weave.addMemberValue("args", argsValue);
+        weave.addMemberValue("statement", new StringMemberValue(statement, constPool));
+        return weave;
+    }
+
+    private static void addWeaves(ConstPool constPool, Object member, Annotation... weaves) {
+        AnnotationsAttribute attr = new AnnotationsAttribute(constPool, AnnotationsAttribute.visibleTag);
+        if (weaves.length == 1) {
+            attr.addAnnotation(weaves[0]);
+        } else {
+            Annotation container = new Annotation(Weaves.class.getName(), constPool);
+            ArrayMemberValue value = new ArrayMemberValue(new AnnotationMemberValue(constPool), constPool);
+            MemberValue[] values = new MemberValue[weaves.length];
+            for (int i = 0; i < weaves.length; i++) {
+                values[i] = new AnnotationMemberValue(weaves[i], constPool);
+            }
+            value.setValue(values);
+            container.addMemberValue("value", value);
+            attr.addAnnotation(container);
+        }
+        setAttribute(member, attr);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void addLocalVariables(CtMethod method, String className, String paramClassName) {
+        MethodInfo methodInfo = method.getMethodInfo();
+        CodeAttribute code = methodInfo.getCodeAttribute();
+        ConstPool constPool = methodInfo.getConstPool();
+        LocalVariableAttribute attr = new LocalVariableAttribute(constPool);
+        attr.addEntry(0, code.getCodeLength(), constPool.addUtf8Info("this"), constPool.addUtf8Info(Descriptor.of(className)), 0);
+        attr.addEntry(0, code.getCodeLength(), constPool.addUtf8Info("instance"), constPool.addUtf8Info(Descriptor.of(paramClassName)), 1);
+        code.getAttributes().add(attr);
+    }
+
+    private static void addAnnotation(ConstPool constPool, CtField field, String annotationName) {
+        AnnotationsAttribute attr = new AnnotationsAttribute(constPool, AnnotationsAttribute.visibleTag);
+        attr.addAnnotation(new Annotation(annotationName, constPool));
+        setAttribute(field, attr);
+    }
+
+    private static void setAttribute(Object member, AnnotationsAttribute attr) {
+        if (member instanceof CtField) {
+            ((CtField) member).getFieldInfo().addAttribute(attr);
+        } else {
+            ((CtMethod) member).getMethodInfo().addAttribute(attr);
+        }
+    }
+
+    /**
+     * Returns directory with generated class files.
+     */
+    File getDir() {
+        return mDir;
+    }
+
+    List<String> getHelperNames() {
+        return mHelperNames;
+    }
+
+    Map<String, WeavePlan> getPlans() {
+        return mPlans;
+    }
+
+    /**
+     * Deletes all generated class files.
+     */
+    void delete() throws IOException {
+        Files.walkFileTree(mDir.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -6,11 +6,26 @@ import com.android.build.api.transform.QualifiedContent.ContentType
 import com.android.build.api.transform.QualifiedContent.Scope
 import com.google.common.collect.ImmutableSet
 import com.google.common.collect.Sets
+import eu.f3rog.blade.compiler.builder.annotation.WeavePlan
+import eu.f3rog.blade.compiler.builder.helper.HelperIndex
+import eu.f3rog.blade.weaving.parcel.ParcelHelperGenerator
+import eu.f3rog.blade.weaving.state.StateHelperGenerator
+import eu.f3rog.blade.weaving.util.ClassFileHeader
 import eu.f3rog.blade.weaving.util.IWeaver
+import eu.f3rog.blade.weaving.util.IndexedClassPath
+import eu.f3rog.blade.weaving.util.JarRewriter
+import eu.f3rog.blade.weaving.util.LibraryClassPools
+import eu.f3rog.blade.weaving.util.ParallelWeaving
+import eu.f3rog.blade.weaving.util.WeaveCache
+import eu.f3rog.blade.weaving.util.WeaveReport
+import eu.f3rog.blade.weaving.util.WeavingUtil
 import groovy.io.FileType
+import groovy.transform.PackageScope
 import javassist.ClassPool
-import javassist.LoaderClassPath
 
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.util.jar.JarEntry
 import java.util.jar.JarFile
 
 /**
@@ -19,10 +34,27 @@ import java.util.jar.JarFile
 public abstract class BaseTransformer
         extends Transform {
 
-    private boolean mDebug
+    private static final String HELPER_SUFFIX = "_Helper"
+    private static final String INJECTOR_SUFFIX = "_MembersInjector"
 
-    public BaseTransformer(boolean debug) {
-        mDebug = debug
+    private boolean mDebug
+    private int mThreads
+    private int mBatchSize
+    private WeaveCache mCache
+    private File mReportDir
+    private boolean mGenerateHelpers
+
+    public BaseTransformer(BladePlugin.BladeConfig config) {
+        mDebug = config.debug
+        mThreads = (config.threads > 0) ? config.threads : Runtime.getRuntime().availableProcessors()
+        mBatchSize = config.batchSize
+        // inlined helpers are removed => woven classes differ
+        mCache = (config.cacheDir != null && config.cacheSize > 0)
+                ? new WeaveCache(new File(config.cacheDir), config.cacheSize * 1024L * 1024L,
+                "${BladePlugin.LIB_VERSION}/${config.engine}${config.inline ? '/inline' : ''}")
+                : null
+        mReportDir = (config.report && config.reportDir != null) ? new File(config.reportDir) : null
+        mGenerateHelpers = !config.processor
     }
 
     boolean isDebug() {
@@ -46,10 +78,14 @@ public abstract class BaseTransformer
 
     @Override
     boolean isIncremental() {
-        return false
+        return true
     }
 
-    abstract IWeaver getWeaver(boolean debug)
+    /**
+     * @param plans Helper names mapped to their weave plans. Plan is <code>null</code> for helpers without index entry.
+     * @param report Report of weaving steps (disabled if not requested).
+     */
+    abstract IWeaver getWeaver(boolean debug, Map<String, WeavePlan> plans, WeaveReport report)
 
     @Override
     void transform(Context context,
@@ -65,121 +101,764 @@ public abstract class BaseTransformer
         log " ------------------------------------------> "
 
         long tic = System.currentTimeMillis()
+        WeaveReport report = (mReportDir != null) ? new WeaveReport() : WeaveReport.DISABLED
+
+        // classes of libraries are shared with other transforms running in the same daemon
+        List<File> libraryJars = getLibraryJars(referencedInputs)
+        ClassPool libraryPool = LibraryClassPools.acquire(libraryJars, getClass().getClassLoader())
+        try {
+            // woven classes depend also on classes of libraries
+            String librariesKey = (mCache != null) ? WeaveCache.createLibrariesKey(libraryJars) : null
+
+            Collection<TransformInput> projectInputs = inputs
+            File helperDir = null
+            Map<File, Status> helperChanges = new HashMap<>()
+            if (mGenerateHelpers) {
+                helperDir = new File(context.temporaryDir, "helpers")
+                // helpers of unchanged classes are kept from the previous build
+                if (!isIncremental || !helperDir.isDirectory()) {
+                    isIncremental = false
+                    helperDir.deleteDir()
+                }
+                helperDir.mkdirs()
+                // generated helpers are used like another directory input
+                inputs = inputs + [createHelperInput(helperDir, helperChanges)]
+            }
 
-        IWeaver weaver = getWeaver(mDebug)
+            // index of all input classes is shared by all class pools
+            IndexedClassPath classPath = createClassPath(inputs, referencedInputs)
+            report.addPhase("class path", (System.currentTimeMillis() - tic) * 1000000L)
+            log " * ClassPath indexed ${classPath.size()} classes in ${System.currentTimeMillis() - tic} ms"
+            try {
+                if (mGenerateHelpers) {
+                    long helpersTic = System.nanoTime()
+                    generateHelpers(projectInputs, classPath, libraryPool, helperDir, helperChanges, isIncremental)
+                    classPath.reindexDirectory(helperDir)
+                    report.addPhase("helpers", System.nanoTime() - helpersTic)
+                }
+                transformInputs(inputs, classPath, libraryPool, librariesKey, outputProvider, isIncremental, report)
+            } finally {
+                classPath.close()
+            }
+        } finally {
+            LibraryClassPools.release(libraryPool)
+        }
 
-        String path = getOutputDir(outputProvider).absolutePath
-        log " * Output path: ${path}"
+        long toc = System.currentTimeMillis()
+        report.addPhase("total", (toc - tic) * 1000000L)
+        log " * Transform time: ${toc - tic} ms"
 
-        // Find all the class names
-        def inputClassNames = getClassNames(inputs)
-        //def referencedClassNames = getClassNames(referencedInputs)
-        def allClassNames = inputClassNames //merge(inputClassNames, referencedClassNames)
+        if (report.enabled) {
+            // one report per transform task (e.g. transformClassesWithBladeForDebug)
+            String reportName = context.path.substring(context.path.lastIndexOf(':') + 1)
+            report.write(mReportDir, reportName)
+            log " * Report written to ${new File(mReportDir, reportName).absolutePath}"
+        }
 
-        // Create and populate the Javassist class pool
-        ClassPool classPool = createClassPool(inputs, referencedInputs)
-        log " * ClassPool initialized with ${allClassNames.size()} classes"
+        log " <------------------------------------------ "
+        log " * ${name} "
+        log " <------------------------------------------ "
+    }
 
-        def allCtClasses = allClassNames
-                .collect { classPool.getCtClass(it) }
+    private void transformInputs(Collection<TransformInput> inputs, IndexedClassPath classPath, ClassPool libraryPool,
+                                 String librariesKey, TransformOutputProvider outputProvider, boolean isIncremental,
+                                 WeaveReport report) {
+        long tic = System.nanoTime()
+        Map<String, WeavePlan> plans = getWeavePlans(inputs, classPath)
+        report.addPhase("weave plans", System.nanoTime() - tic)
+        // each weaving thread needs its own class pool and weaver
+        ParallelWeaving.Factory factory = [
+                createClassPool: { createClassPool(classPath, libraryPool) },
+                createWeaver   : { getWeaver(isDebug(), plans, report) }
+        ] as ParallelWeaving.Factory
+
+        File outputDir = getOutputDir(outputProvider)
+        log " * Output path: ${outputDir.absolutePath}"
+
+        boolean incremental = isIncremental && canTransformIncrementally(inputs, outputDir)
+        if (!incremental) {
+            // output of previous build is not valid anymore
+            outputProvider.deleteAll()
+        }
 
-        weaver.weave(classPool, allCtClasses)
+        if (incremental) {
+            log " * Incremental transform"
+            transformIncrementally(inputs, classPath, plans, librariesKey, factory, report, outputDir)
+        } else {
+            log " * Full transform"
+            transformFully(inputs, classPath, plans, librariesKey, factory, report, outputProvider, outputDir)
+        }
+    }
 
-        // all classes need to we written
-        for (ctClass in allCtClasses) {
-            ctClass.writeFile(path)
+    /**
+     * Weaves all input classes. Only woven classes are written, classes removed by weaving (with <code>null</code>
+     * bytecode) are left out and all other classes are copied as they are. Each jar input has its own jar output.
+     */
+    private void transformFully(Collection<TransformInput> inputs, IndexedClassPath classPath,
+                                Map<String, WeavePlan> plans, String librariesKey, ParallelWeaving.Factory factory,
+                                WeaveReport report, TransformOutputProvider outputProvider, File outputDir) {
+        // inputs were already scanned by the class path => no files are read
+        Map<String, File> classFiles = getClassFiles(inputs, classPath)
+        Map<String, File> jarClasses = getJarClassNames(inputs, classPath)
+
+        log " * ClassPool initialized with ${classFiles.size() + jarClasses.size()} classes"
+
+        // only helpers (with existing target) have to be parsed
+        List<String> helpers = new ArrayList<>()
+        for (String helperName : plans.keySet()) {
+            if (classPath.find(getTargetName(helperName, plans)) != null) {
+                helpers.add(helperName)
+            }
         }
+        log " * ${helpers.size()} helpers found"
 
-        long toc = System.currentTimeMillis()
-        log " * Transform time: ${toc - tic} ms"
+        Map<String, byte[]> wovenClasses = weave(helpers, classPath, plans, librariesKey, factory, report)
+        int removedCount = wovenClasses.values().count { it == null }
+        log " * ${wovenClasses.size() - removedCount} woven, ${removedCount} removed, ${classFiles.size() + jarClasses.size() - wovenClasses.size()} copied"
 
-        log " <------------------------------------------ "
-        log " * ${name} "
-        log " <------------------------------------------ "
+        long tic = System.nanoTime()
+
+        // split woven classes by their input jar
+        Map<File, Map<String, byte[]>> wovenJarEntries = new HashMap<>()
+        for (Map.Entry<String, byte[]> entry : wovenClasses.entrySet()) {
+            File jar = jarClasses.get(entry.key)
+            if (jar != null) {
+                if (!wovenJarEntries.containsKey(jar)) {
+                    wovenJarEntries.put(jar, new HashMap<String, byte[]>())
+                }
+                wovenJarEntries.get(jar).put(getEntryName(entry.key), entry.value)
+            } else if (entry.value != null) {
+                writeClass(outputDir, entry.key, entry.value)
+            }
+        }
+
+        // the rest is copied without any change
+        for (Map.Entry<String, File> entry : classFiles.entrySet()) {
+            if (!wovenClasses.containsKey(entry.key)) {
+                copyClass(entry.value, outputDir, entry.key)
+            }
+        }
+        for (TransformInput input : inputs) {
+            for (JarInput jarInput : input.jarInputs) {
+                File outputJar = outputProvider.getContentLocation(jarInput.name, getInputTypes(), getScopes(), Format.JAR)
+                Map<String, byte[]> wovenEntries = wovenJarEntries.get(jarInput.file)
+                if (wovenEntries == null) {
+                    outputJar.parentFile.mkdirs()
+                    Files.copy(jarInput.file.toPath(), outputJar.toPath(), StandardCopyOption.REPLACE_EXISTING)
+                } else {
+                    JarRewriter.rewrite(jarInput.file, outputJar, wovenEntries)
+                }
+            }
+        }
+        report.addPhase("output", System.nanoTime() - tic)
     }
 
     /**
-     * Creates and populates the Javassist class pool.
+     * Weaves only helpers and targets affected by changed files. Other changed files are copied or deleted as they are.
+     */
+    private void transformIncrementally(Collection<TransformInput> inputs, IndexedClassPath classPath, Map<String, WeavePlan> plans,
+                                        String librariesKey, ParallelWeaving.Factory factory, WeaveReport report,
+                                        File outputDir) {
+        Map<String, File> changedClasses = new HashMap<>()
+        Set<String> removedClasses = new HashSet<>()
+
+        for (TransformInput input : inputs) {
+            for (DirectoryInput dirInput : input.directoryInputs) {
+                for (Map.Entry<File, Status> entry : dirInput.changedFiles.entrySet()) {
+                    File file = entry.key
+                    if (!file.name.endsWith(SdkConstants.DOT_CLASS)) {
+                        continue
+                    }
+
+                    String className = getClassName(dirInput.file, file)
+                    switch (entry.value) {
+                        case Status.ADDED:
+                        case Status.CHANGED:
+                            changedClasses.put(className, file)
+                            break
+                        case Status.REMOVED:
+                            removedClasses.add(className)
+                            break
+                        default:
+                            break
+                    }
+                }
+            }
+        }
+
+        // find targets which have to be woven again
+        Set<String> targetNames = new TreeSet<>()
+        for (String className : changedClasses.keySet() + removedClasses) {
+            String targetName = getTargetName(className)
+            if (classPath.find(targetName) != null && classPath.find(targetName + HELPER_SUFFIX) != null) {
+                targetNames.add(targetName)
+            }
+        }
+        log " * ${changedClasses.size()} changed, ${removedClasses.size()} removed, ${targetNames.size()} to weave"
+
+        for (String className : removedClasses) {
+            Files.deleteIfExists(getOutputFile(outputDir, className).toPath())
+        }
+
+        List<String> helpers = targetNames.collect { it + HELPER_SUFFIX }
+        Map<String, byte[]> wovenClasses = weave(helpers, classPath, plans, librariesKey, factory, report)
+        long tic = System.nanoTime()
+        for (Map.Entry<String, byte[]> entry : wovenClasses.entrySet()) {
+            if (entry.value != null) {
+                writeClass(outputDir, entry.key, entry.value)
+            } else {
+                // removed by weaving (e.g. inlined helper)
+                Files.deleteIfExists(getOutputFile(outputDir, entry.key).toPath())
+            }
+        }
+
+        // previous output of related classes may be woven => replace it with input if it was not woven now
+        for (String targetName : targetNames) {
+            for (String className : [targetName, targetName + INJECTOR_SUFFIX]) {
+                if (!wovenClasses.containsKey(className) && !changedClasses.containsKey(className)) {
+                    File file = findClassFile(inputs, className)
+                    if (file != null) {
+                        changedClasses.put(className, file)
+                    }
+                }
+            }
+        }
+
+        // the rest is copied without any change
+        for (Map.Entry<String, File> entry : changedClasses.entrySet()) {
+            if (!wovenClasses.containsKey(entry.key)) {
+                copyClass(entry.value, outputDir, entry.key)
+            }
+        }
+        report.addPhase("output", System.nanoTime() - tic)
+    }
+
+    /**
+     * Weaves given helpers. Results of previous builds are taken from the cache, if possible.
+     * Helpers of targets which are already woven (e.g. classes of a library woven before packaging) are skipped.
      *
-     * @param inputs the inputs provided by the Transform API
-     * @param referencedInputs the referencedInputs provided by the Transform API
-     * @return the populated ClassPool instance
+     * @return bytecode of woven classes sorted by class name (<code>null</code> for removed classes)
      */
-    private ClassPool createClassPool(Collection<TransformInput> inputs, Collection<TransformInput> referencedInputs) {
-        // Don't use ClassPool.getDefault(). Doing consecutive builds in the same run (e.g. debug+release)
-        // will use a cached object and all the classes will be frozen.
-        ClassPool classPool = new ClassPool(null)
-        classPool.appendSystemPath()
-        classPool.appendClassPath(new LoaderClassPath(getClass().getClassLoader()))
+    private Map<String, byte[]> weave(List<String> helperNames, IndexedClassPath classPath, Map<String, WeavePlan> plans,
+                                      String librariesKey, ParallelWeaving.Factory factory, WeaveReport report) {
+        long tic = System.nanoTime()
+        try {
+            List<String> unwovenHelpers = new ArrayList<>(helperNames.size())
+            for (String helperName : helperNames) {
+                if (!isWoven(classPath, getTargetName(helperName, plans))) {
+                    unwovenHelpers.add(helperName)
+                }
+            }
+            if (unwovenHelpers.size() < helperNames.size()) {
+                log " * ${helperNames.size() - unwovenHelpers.size()} targets already woven"
+            }
+            return weaveCached(unwovenHelpers, classPath, plans, librariesKey, factory, report)
+        } finally {
+            report.addPhase("weaving", System.nanoTime() - tic)
+        }
+    }
 
-        inputs.each {
-            it.directoryInputs.each {
-                classPool.appendClassPath(it.file.absolutePath)
+    private Map<String, byte[]> weaveCached(List<String> helperNames, IndexedClassPath classPath, Map<String, WeavePlan> plans,
+                                            String librariesKey, ParallelWeaving.Factory factory, WeaveReport report) {
+        if (mCache == null) {
+            return weaveHelpers(helperNames, classPath, factory, report)
+        }
+
+        Map<String, byte[]> wovenClasses = new TreeMap<>()
+        Map<String, String> missingKeys = new HashMap<>()
+        List<String> missingHelpers = new ArrayList<>()
+        for (String helperName : helperNames) {
+            String key = getCacheKey(helperName, classPath, plans, librariesKey)
+            Map<String, byte[]> cached = (key != null) ? mCache.get(key) : null
+            if (cached != null) {
+                wovenClasses.putAll(cached)
+                report.forClass(getTargetName(helperName, plans)).setCached()
+            } else {
+                missingHelpers.add(helperName)
+                if (key != null) {
+                    missingKeys.put(helperName, key)
+                }
             }
+        }
+        log " * ${helperNames.size() - missingHelpers.size()} helpers taken from cache"
+
+        Map<String, byte[]> newClasses = weaveHelpers(missingHelpers, classPath, factory, report)
+        wovenClasses.putAll(newClasses)
 
-            it.jarInputs.each {
-                classPool.appendClassPath(it.file.absolutePath)
+        for (Map.Entry<String, String> entry : missingKeys.entrySet()) {
+            String targetName = getTargetName(entry.key, plans)
+            Map<String, byte[]> classes = new TreeMap<>()
+            for (String className : [targetName, targetName + INJECTOR_SUFFIX, entry.key]) {
+                if (newClasses.containsKey(className)) {
+                    classes.put(className, newClasses.get(className))
+                }
             }
+            mCache.put(entry.value, classes)
         }
+        mCache.trim()
 
-        referencedInputs.each {
-            it.directoryInputs.each {
-                classPool.appendClassPath(it.file.absolutePath)
+        return wovenClasses
+    }
+
+    /**
+     * Creates cache key from all classes used for weaving of given helper.
+     *
+     * @return key or <code>null</code> if woven classes cannot be cached
+     */
+    private String getCacheKey(String helperName, IndexedClassPath classPath, Map<String, WeavePlan> plans,
+                               String librariesKey) {
+        byte[] helper = classPath.readBytecode(helperName)
+        if (helper == null || !WeaveCache.isCacheable(helper)) {
+            return null
+        }
+
+        String targetName = getTargetName(helperName, plans)
+        Map<String, byte[]> classes = new HashMap<>()
+        classes.put(helperName, helper)
+        classes.put(targetName, classPath.readBytecode(targetName))
+        classes.put(targetName + INJECTOR_SUFFIX, classPath.readBytecode(targetName + INJECTOR_SUFFIX))
+        // weaver resolves superclasses of the target (e.g. to find overridden methods)
+        String superclassName = new ClassFileHeader(classes.get(targetName)).superclassName
+        while (superclassName != null) {
+            byte[] superclass = classPath.readBytecode(superclassName)
+            classes.put(superclassName, superclass)
+            // superclasses from libraries are covered by the key of libraries
+            superclassName = (superclass != null) ? new ClassFileHeader(superclass).superclassName : null
+        }
+        return mCache.createKey(classes, librariesKey)
+    }
+
+    /**
+     * Checks if given class is marked as woven. Only constant pool of the class is read.
+     */
+    private static boolean isWoven(IndexedClassPath classPath, String className) {
+        byte[] bytecode = classPath.readBytecode(className)
+        return bytecode != null && new ClassFileHeader(bytecode).woven
+    }
+
+    /**
+     * Weaves given helpers in batches, so only classes of one batch are kept in memory.
+     * If more threads are available, batches are woven in parallel.
+     *
+     * @return bytecode of woven classes sorted by class name
+     */
+    private Map<String, byte[]> weaveHelpers(List<String> helperNames, IndexedClassPath classPath, ParallelWeaving.Factory factory,
+                                             WeaveReport report) {
+        if (helperNames.isEmpty()) {
+            return new TreeMap<String, byte[]>()
+        }
+
+        List<List<String>> helperGroups = groupByHierarchy(helperNames, classPath)
+        log " * Weaving ${helperGroups.size()} groups using ${mThreads} threads"
+
+        return new ParallelWeaving(mThreads, mBatchSize, factory, report, classPath).weave(helperGroups)
+    }
+
+    /**
+     * Groups helpers, so targets with woven superclasses are woven together with them.
+     * Helpers of superclasses are placed before helpers of their subclasses.
+     */
+    private static List<List<String>> groupByHierarchy(List<String> helperNames, IndexedClassPath classPath) {
+        Set<String> allHelpers = new HashSet<>(helperNames)
+        Map<String, Map<String, Integer>> groups = new TreeMap<>()
+
+        for (String helperName : helperNames) {
+            String root = helperName
+            int depth = 0
+
+            // only class headers are read => class pool does not keep whole hierarchy in memory
+            byte[] currentClass = classPath.readBytecode(getTargetName(helperName))
+            while (currentClass != null) {
+                String superclassName = new ClassFileHeader(currentClass).superclassName
+                currentClass = (superclassName != null) ? classPath.readBytecode(superclassName) : null
+                if (currentClass != null && allHelpers.contains(superclassName + HELPER_SUFFIX)) {
+                    root = superclassName + HELPER_SUFFIX
+                    depth++
+                }
+            }
+
+            if (!groups.containsKey(root)) {
+                groups.put(root, new TreeMap<String, Integer>())
+            }
+            groups.get(root).put(helperName, depth)
+        }
+
+        List<List<String>> helperGroups = new ArrayList<>(groups.size())
+        for (Map<String, Integer> group : groups.values()) {
+            List<String> sorted = new ArrayList<>(group.keySet())
+            // stable sort => helpers with the same depth stay sorted by name
+            Collections.sort(sorted, { String l, String r -> group.get(l) <=> group.get(r) } as Comparator<String>)
+            helperGroups.add(sorted)
+        }
+        return helperGroups
+    }
+
+    /**
+     * Generates helpers of classes from directory inputs without annotation processor
+     * (see {@link StateHelperGenerator} and {@link ParcelHelperGenerator}).
+     * If the transform is incremental, only helpers of changed classes are generated again.
+     *
+     * @param classPath index of inputs including the helper directory
+     * @param helperChanges changes of helper classes, which are filled in
+     */
+    private void generateHelpers(Collection<TransformInput> inputs, IndexedClassPath classPath, ClassPool libraryPool,
+                                 File helperDir, Map<File, Status> helperChanges, boolean isIncremental) {
+        Map<String, File> classFiles = new TreeMap<>()
+        Set<String> removedClasses = new TreeSet<>()
+        if (isIncremental) {
+            for (TransformInput input : inputs) {
+                for (DirectoryInput dirInput : input.directoryInputs) {
+                    for (Map.Entry<File, Status> entry : dirInput.changedFiles.entrySet()) {
+                        if (!entry.key.name.endsWith(SdkConstants.DOT_CLASS)) {
+                            continue
+                        }
+                        String className = getClassName(dirInput.file, entry.key)
+                        if (entry.value == Status.ADDED || entry.value == Status.CHANGED) {
+                            classFiles.put(className, entry.key)
+                        } else if (entry.value == Status.REMOVED) {
+                            removedClasses.add(className)
+                        }
+                    }
+                }
             }
+        } else {
+            classFiles.putAll(getClassFiles(inputs, classPath))
+        }
 
-            it.jarInputs.each {
-                classPool.appendClassPath(it.file.absolutePath)
+        // previous helpers of changed classes are replaced
+        for (String className : classFiles.keySet() + removedClasses) {
+            String helperName = WeavingUtil.getHelperName(className)
+            for (File helperFile : getHelperFiles(helperDir, helperName)) {
+                Files.delete(helperFile.toPath())
+                helperChanges.put(helperFile, Status.REMOVED)
+            }
+            Files.deleteIfExists(new File(helperDir, HelperIndex.getEntryPath(helperName)).toPath())
+        }
+        // generator checks that helpers do not exist yet
+        classPath.reindexDirectory(helperDir)
+
+        ClassPool classPool = createClassPool(classPath, libraryPool)
+        StateHelperGenerator stateGenerator = new StateHelperGenerator()
+        ParcelHelperGenerator parcelGenerator = new ParcelHelperGenerator()
+        int count = 0
+        for (String className : classFiles.keySet()) {
+            // only classes which refer to @State or @Parcel are parsed
+            byte[] bytecode = classPath.readBytecode(className)
+            if (bytecode == null) {
+                continue
+            }
+            List<String> helperNames = new ArrayList<>()
+            if (StateHelperGenerator.mayHaveState(bytecode)) {
+                helperNames.add(stateGenerator.generate(classPool.get(className), helperDir))
             }
+            if (ParcelHelperGenerator.mayHaveParcel(bytecode)) {
+                helperNames.add(parcelGenerator.generate(classPool.get(className), helperDir))
+            }
+            for (String helperName : helperNames) {
+                if (helperName == null) {
+                    continue
+                }
+                for (File helperFile : getHelperFiles(helperDir, helperName)) {
+                    helperChanges.put(helperFile, helperChanges.containsKey(helperFile) ? Status.CHANGED : Status.ADDED)
+                }
+                count++
+            }
+        }
+        log " * ${count} helpers generated from ${classFiles.size()} classes"
+    }
+
+    /**
+     * Finds class files of given generated helper and of its nested classes (e.g. creator of parcelable).
+     */
+    private static List<File> getHelperFiles(File helperDir, String helperName) {
+        File helperFile = getOutputFile(helperDir, helperName)
+        String nestedPrefix = helperFile.name - SdkConstants.DOT_CLASS + '$'
+        List<File> files = new ArrayList<>()
+        if (helperFile.exists()) {
+            files.add(helperFile)
         }
+        File[] nestedFiles = helperFile.parentFile.listFiles({ File dir, String name ->
+            name.startsWith(nestedPrefix) && name.endsWith(SdkConstants.DOT_CLASS)
+        } as FilenameFilter)
+        if (nestedFiles != null) {
+            files.addAll(nestedFiles)
+        }
+        return files
+    }
+
+    /**
+     * @return input with generated helpers and their index
+     */
+    private TransformInput createHelperInput(File helperDir, Map<File, Status> helperChanges) {
+        DirectoryInput dirInput = [
+                getFile        : { helperDir },
+                getName        : { "blade-helpers" },
+                getContentTypes: { getInputTypes() },
+                getScopes      : { getScopes() },
+                getChangedFiles: { helperChanges }
+        ] as DirectoryInput
+        return [
+                getDirectoryInputs: { Collections.singletonList(dirInput) },
+                getJarInputs      : { Collections.emptyList() }
+        ] as TransformInput
+    }
 
+    /**
+     * Checks if changes of inputs can be handled incrementally.
+     *
+     * @param outputDir directory with output of previous build
+     */
+    @PackageScope
+    static boolean canTransformIncrementally(Collection<TransformInput> inputs, File outputDir) {
+        for (TransformInput input : inputs) {
+            for (JarInput jarInput : input.jarInputs) {
+                // helpers and their targets do not have to be in the same jar
+                if (jarInput.status != Status.NOTCHANGED) {
+                    return false
+                }
+            }
+
+            for (DirectoryInput dirInput : input.directoryInputs) {
+                for (Map.Entry<File, Status> entry : dirInput.changedFiles.entrySet()) {
+                    if (!entry.key.name.endsWith(HELPER_SUFFIX + SdkConstants.DOT_CLASS)) {
+                        continue
+                    }
+                    // woven interfaces depend also on helpers of superclasses => subclasses would have to be woven too
+                    if (entry.value == Status.REMOVED) {
+                        return false
+                    }
+                    if (entry.value == Status.NOTCHANGED) {
+                        continue
+                    }
+                    if (new ClassFileHeader(entry.key.bytes).interfaceCount > 0) {
+                        return false
+                    }
+                    // helper with interfaces is never inlined => its previous version is in the output
+                    File previousHelper = getOutputFile(outputDir, getClassName(dirInput.file, entry.key))
+                    if (previousHelper.exists() && new ClassFileHeader(previousHelper.bytes).interfaceCount > 0) {
+                        return false
+                    }
+                }
+            }
+        }
+        return true
+    }
+
+    /**
+     * Creates index of all classes from inputs and directories of referenced inputs.
+     * Jars of referenced inputs are in the library pool (see {@link #getLibraryJars}).
+     *
+     * @param inputs the inputs provided by the Transform API
+     * @param referencedInputs the referencedInputs provided by the Transform API
+     * @return the class path, which has to be closed after the transform
+     */
+    private IndexedClassPath createClassPath(Collection<TransformInput> inputs, Collection<TransformInput> referencedInputs) {
+        List<File> files = new ArrayList<>()
+        for (TransformInput input : inputs) {
+            for (DirectoryInput dirInput : input.directoryInputs) {
+                files.add(dirInput.file)
+            }
+            for (JarInput jarInput : input.jarInputs) {
+                files.add(jarInput.file)
+            }
+        }
+        // directories may change between transforms => they are not shared
+        for (TransformInput input : referencedInputs) {
+            for (DirectoryInput dirInput : input.directoryInputs) {
+                files.add(dirInput.file)
+            }
+        }
+        // directories and jars are indexed in parallel
+        return new IndexedClassPath(files, mThreads)
+    }
+
+    /**
+     * Finds jars of referenced inputs.
+     */
+    private static List<File> getLibraryJars(Collection<TransformInput> referencedInputs) {
+        List<File> jars = new ArrayList<>()
+        for (TransformInput input : referencedInputs) {
+            for (JarInput jarInput : input.jarInputs) {
+                jars.add(jarInput.file)
+            }
+        }
+        return jars
+    }
+
+    /**
+     * Creates and populates the Javassist class pool.
+     *
+     * @param classPath the index of inputs and referenced directories
+     * @param libraryPool the shared pool of system classes and referenced jars
+     * @return the populated ClassPool instance
+     */
+    protected ClassPool createClassPool(IndexedClassPath classPath, ClassPool libraryPool) {
+        // Don't use ClassPool.getDefault(). Doing consecutive builds in the same run (e.g. debug+release)
+        // will use a cached object and all the classes will be frozen.
+        ClassPool classPool = new ClassPool(libraryPool)
+        // classes of the project are always loaded (and woven) by this pool => shared classes stay unchanged
+        classPool.childFirstLookup = true
+        classPool.appendClassPath(classPath)
         return classPool
     }
 
-    private static Set<String> getClassNames(Collection<TransformInput> inputs) {
-        Set<String> classNames = new HashSet<String>()
+    /**
+     * Finds all helpers using {@link HelperIndex}. Inputs without the index are searched for helper classes.
+     *
+     * @return helper names mapped to their weave plans (<code>null</code> for helpers without index entry)
+     */
+    private static Map<String, WeavePlan> getWeavePlans(Collection<TransformInput> inputs, IndexedClassPath classPath) {
+        Map<String, WeavePlan> plans = new TreeMap<>()
 
         inputs.each {
             it.directoryInputs.each {
-                def dirPath = it.file.absolutePath
-                it.file.eachFileRecurse(FileType.FILES) {
-                    if (it.absolutePath.endsWith(SdkConstants.DOT_CLASS)) {
-                        def className =
-                                it.absolutePath.substring(
-                                        dirPath.length() + 1,
-                                        it.absolutePath.length() - SdkConstants.DOT_CLASS.length()
-                                ).replace(File.separatorChar, '.' as char)
-                        classNames.add(className)
+                def dir = it.file
+                def indexDir = new File(dir, HelperIndex.DIRECTORY)
+                if (indexDir.isDirectory()) {
+                    indexDir.eachFile(FileType.FILES) { File entry ->
+                        plans.put(entry.name, HelperIndex.read(new FileInputStream(entry)))
+                    }
+                } else {
+                    for (String className : classPath.getClassNames(dir)) {
+                        if (className.endsWith(HELPER_SUFFIX)) {
+                            plans.put(className, null)
+                        }
                     }
                 }
             }
 
-            it.jarInputs.each {
-                def jarFile = new JarFile(it.file)
-                jarFile.entries().findAll {
-                    !it.directory && it.name.endsWith(SdkConstants.DOT_CLASS)
-                }.each {
-                    def path = it.name
-                    def className = path.substring(0, path.length() - SdkConstants.DOT_CLASS.length())
-                            .replace(File.separatorChar, '.' as char)
-                    classNames.add(className)
+            it.jarInputs.each { JarInput jarInput ->
+                JarFile jarFile = new JarFile(jarInput.file)
+                try {
+                    Map<String, WeavePlan> indexed = new HashMap<>()
+                    Map<String, WeavePlan> found = new HashMap<>()
+                    for (JarEntry entry : jarFile.entries()) {
+                        if (entry.name.startsWith(HelperIndex.DIRECTORY + '/') && !entry.directory) {
+                            String helperName = entry.name.substring(HelperIndex.DIRECTORY.length() + 1)
+                            indexed.put(helperName, HelperIndex.read(jarFile.getInputStream(entry)))
+                        } else if (isClassEntry(entry) && entry.name.endsWith(HELPER_SUFFIX + SdkConstants.DOT_CLASS)) {
+                            found.put(getClassName(entry), null)
+                        }
+                    }
+                    plans.putAll(indexed.isEmpty() ? found : indexed)
+                } finally {
+                    jarFile.close()
+                }
+            }
+        }
+        return plans
+    }
+
+    /**
+     * Finds all class files of directory inputs using index of given class path.
+     *
+     * @return class names mapped to their files
+     */
+    private static Map<String, File> getClassFiles(Collection<TransformInput> inputs, IndexedClassPath classPath) {
+        Map<String, File> classFiles = new HashMap<>()
+
+        for (TransformInput input : inputs) {
+            for (DirectoryInput dirInput : input.directoryInputs) {
+                for (String className : classPath.getClassNames(dirInput.file)) {
+                    classFiles.put(className, getOutputFile(dirInput.file, className))
+                }
+            }
+        }
+        return classFiles
+    }
+
+    /**
+     * Finds all classes of jar inputs using index of given class path.
+     *
+     * @return class names mapped to their jars
+     */
+    private static Map<String, File> getJarClassNames(Collection<TransformInput> inputs, IndexedClassPath classPath) {
+        Map<String, File> classNames = new HashMap<>()
+
+        for (TransformInput input : inputs) {
+            for (JarInput jarInput : input.jarInputs) {
+                for (String className : classPath.getClassNames(jarInput.file)) {
+                    classNames.put(className, jarInput.file)
                 }
             }
         }
         return classNames
     }
 
+    /**
+     * Finds class file of given class in directory inputs.
+     *
+     * @return class file or <code>null</code> if not found
+     */
+    private static File findClassFile(Collection<TransformInput> inputs, String className) {
+        for (TransformInput input : inputs) {
+            for (DirectoryInput dirInput : input.directoryInputs) {
+                File file = getOutputFile(dirInput.file, className)
+                if (file.exists()) {
+                    return file
+                }
+            }
+        }
+        return null
+    }
+
+    private static void writeClass(File outputDir, String className, byte[] bytecode) {
+        File outputFile = getOutputFile(outputDir, className)
+        outputFile.parentFile.mkdirs()
+        Files.write(outputFile.toPath(), bytecode)
+    }
+
+    private static void copyClass(File file, File outputDir, String className) {
+        File outputFile = getOutputFile(outputDir, className)
+        outputFile.parentFile.mkdirs()
+        Files.copy(file.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING)
+    }
+
+    private static boolean isClassEntry(JarEntry entry) {
+        return !entry.directory && entry.name.endsWith(SdkConstants.DOT_CLASS)
+    }
+
+    private static String getClassName(JarEntry entry) {
+        String path = entry.name
+        return path.substring(0, path.length() - SdkConstants.DOT_CLASS.length())
+                .replace('/' as char, '.' as char)
+    }
+
+    private static String getClassName(File dir, File classFile) {
+        String path = classFile.absolutePath
+        return path.substring(
+                dir.absolutePath.length() + 1,
+                path.length() - SdkConstants.DOT_CLASS.length()
+        ).replace(File.separatorChar, '.' as char)
+    }
+
+    private static String getEntryName(String className) {
+        return className.replace('.' as char, '/' as char) + SdkConstants.DOT_CLASS
+    }
+
+    private static String getTargetName(String helperName, Map<String, WeavePlan> plans) {
+        WeavePlan plan = plans.get(helperName)
+        return (plan != null) ? plan.targetName : getTargetName(helperName)
+    }
+
+    private static String getTargetName(String className) {
+        for (String suffix : [HELPER_SUFFIX, INJECTOR_SUFFIX]) {
+            if (className.endsWith(suffix)) {
+                return className.substring(0, className.length() - suffix.length())
+            }
+        }
+        return className
+    }
+
+    private static File getOutputFile(File outputDir, String className) {
+        return new File(outputDir, className.replace('.' as char, File.separatorChar) + SdkConstants.DOT_CLASS)
+    }
+
     private File getOutputDir(TransformOutputProvider outputProvider) {
         return outputProvider.getContentLocation(
                 getName(), getInputTypes(), getScopes(), Format.DIRECTORY)
     }
 
-    private static Set<String> merge(Set<String> set1, Set<String> set2) {
-        Set<String> merged = new HashSet<String>()
-        merged.addAll(set1)
-        merged.addAll(set2)
-        return merged;
-    }
-
     private void log(String s) {
         if (mDebug) {
             System.out.println(s)
@@ -2,6 +2,7 @@ package eu.f3rog.blade.plugin
 
 import com.android.build.gradle.AppPlugin
 import com.android.build.gradle.LibraryPlugin
+import eu.f3rog.blade.weaving.BladeWeaver
 import groovy.json.JsonSlurper
 import org.gradle.api.GradleException
 import org.gradle.api.Plugin
@@ -17,17 +18,37 @@ public final class BladePlugin
         public boolean debug = false
         // include all modules by default
         public String[] modules = []
+        // weave on 1 thread by default (0 = use all available processors)
+        public int threads = 1
+        // maximum number of helpers woven using one class pool - limits used memory (0 = no limit)
+        public int batchSize = 100
+        // directory for cache of woven classes (inside gradle user home by default)
+        public String cacheDir = null
+        // no cache of woven classes by default (maximum cache size in MB, 0 = no cache)
+        public int cacheSize = 0
+        // compile all woven statements from source by default
+        public String engine = "source"
+        // do not write weaving report by default
+        public boolean report = false
+        // directory for weaving reports (build/reports/blade by default)
+        public String reportDir = null
+        // keep helper classes by default (true = inline helpers into their targets if possible)
+        public boolean inline = false
+        // generate helpers using annotation processor by default (false = helpers of transform modules are generated by the transform)
+        public boolean processor = true
 
         @Override
         public String toString() {
-            return String.format("%s[debug: %b, modules: %s]",
-                    BladeConfig.class.getSimpleName(), this.debug, Arrays.toString(this.modules))
+            return String.format("%s[debug: %b, modules: %s, threads: %d, batchSize: %d, cacheDir: %s, cacheSize: %d, engine: %s, report: %b, reportDir: %s, inline: %b, processor: %b]",
+                    BladeConfig.class.getSimpleName(), this.debug, Arrays.toString(this.modules), this.threads,
+                    this.batchSize, this.cacheDir, this.cacheSize, this.engine, this.report, this.reportDir, this.inline, this.processor)
         }
     }
 
     public static String ERROR_GRADLE_TOOLS_1_5_0_REQUIRED = "Blade plugin only supports android gradle plugin 1.5.0 or later!"
     public static String ERROR_ANDROID_PLUGIN_REQUIRED = "'com.android.application' or 'com.android.library' plugin required!"
     public static String ERROR_MODULE_DOES_NOT_EXIST = "Blade does not have module '%s'!"
+    public static String ERROR_ENGINE_DOES_NOT_EXIST = "Blade does not have weaving engine '%s'!"
     public static String ERROR_APT_IS_MISSING = "Apply apt plugin or update gradle plugin to >=2.2.0!"
     public static String ERROR_CONFIG_FILE_IS_MISSING = "Blade configuration file is missing! (more info here: https://github.com/FrantisekGazo/Blade/wiki#1-create-configuration-file)"
 
@@ -35,6 +56,10 @@ public final class BladePlugin
     public static String LIB_VERSION = "2.6.0"
     public static String LIB_CONFIG_FILE_NAME = "blade"
     public static String[] LIB_MODULES = ["arg", "extra", "mvp", "parcel", "state"]
+    // modules whose helpers can be generated by the transform (without annotation processor)
+    public static String[] TRANSFORM_MODULES = ["parcel", "state"]
+    // classifier of module variants whose annotations are kept in bytecode
+    public static String BYTECODE_CLASSIFIER = "bytecode"
 
     private BladeConfig mConfig;
 
@@ -55,19 +80,30 @@ public final class BladePlugin
         prepareConfig(project)
 
         project.repositories.add(project.getRepositories().jcenter())
-        def apList = determineAnnotationProcessorPlugin(project)
         // core
         project.dependencies.add("compile", "$LIB_GROUP_ID:core:$LIB_VERSION")
         // modules
+        final List<String> processedModules = mConfig.modules.findAll { isProcessed(it) }
         for (final String moduleName : mConfig.modules) {
-            project.dependencies.add("compile", "$LIB_GROUP_ID:$moduleName:$LIB_VERSION")
-            for (final String ap : apList) {
-                project.dependencies.add(ap, "$LIB_GROUP_ID:$moduleName-compiler:$LIB_VERSION")
+            if (isProcessed(moduleName)) {
+                project.dependencies.add("compile", "$LIB_GROUP_ID:$moduleName:$LIB_VERSION")
+            } else {
+                // annotations of this variant are kept in bytecode, so the transform can find them
+                project.dependencies.add("compile", "$LIB_GROUP_ID:$moduleName:$LIB_VERSION:$BYTECODE_CLASSIFIER")
+            }
+        }
+        // annotation processor is not needed if all helpers are generated by the transform
+        if (!processedModules.isEmpty()) {
+            def apList = determineAnnotationProcessorPlugin(project)
+            for (final String moduleName : processedModules) {
+                for (final String ap : apList) {
+                    project.dependencies.add(ap, "$LIB_GROUP_ID:$moduleName-compiler:$LIB_VERSION")
+                }
             }
         }
 
         // apply bytecode weaving via Transform API
-        project.android.registerTransform(new BladeTransformer(mConfig.debug))
+        project.android.registerTransform(new BladeTransformer(mConfig))
     }
 
     private String[] determineAnnotationProcessorPlugin(Project project) {
@@ -88,6 +124,10 @@ public final class BladePlugin
         }
     }
 
+    private boolean isProcessed(String moduleName) {
+        return mConfig.processor || !TRANSFORM_MODULES.contains(moduleName)
+    }
+
     private static boolean isTransformAvailable() {
         try {
             Class.forName('com.android.build.api.transform.Transform')
@@ -116,6 +156,33 @@ public final class BladePlugin
                     case "modules":
                         mConfig.modules = value
                         break
+                    case "threads":
+                        mConfig.threads = value
+                        break
+                    case "batchSize":
+                        mConfig.batchSize = value
+                        break
+                    case "cacheDir":
+                        mConfig.cacheDir = value
+                        break
+                    case "cacheSize":
+                        mConfig.cacheSize = value
+                        break
+                    case "engine":
+                        mConfig.engine = value
+                        break
+                    case "report":
+                        mConfig.report = value
+                        break
+                    case "reportDir":
+                        mConfig.reportDir = value
+                        break
+                    case "inline":
+                        mConfig.inline = value
+                        break
+                    case "processor":
+                        mConfig.processor = value
+                        break
                     default:
                         throw new IllegalStateException("'$key' is not supported in ${LIB_CONFIG_FILE_NAME}.json!")
                 }
@@ -129,6 +196,22 @@ public final class BladePlugin
 
         // check module names
         mConfig.modules = checkModuleNames(mConfig.modules)
+        // check weaving engine
+        if (BladeWeaver.Engine.from(mConfig.engine) == null) {
+            throw new IllegalStateException(String.format(ERROR_ENGINE_DOES_NOT_EXIST, mConfig.engine))
+        }
+        // cache is shared by all projects
+        if (mConfig.cacheDir == null) {
+            mConfig.cacheDir = new File(project.gradle.gradleUserHomeDir, "caches${File.separator}blade").absolutePath
+        } else {
+            mConfig.cacheDir = project.file(mConfig.cacheDir).absolutePath
+        }
+        // reports belong to the project
+        if (mConfig.reportDir == null) {
+            mConfig.reportDir = new File(project.buildDir, "reports${File.separator}blade").absolutePath
+        } else {
+            mConfig.reportDir = project.file(mConfig.reportDir).absolutePath
+        }
 
         System.out.println("used Blade config: " + mConfig)
     }
@@ -1,13 +1,20 @@
 package eu.f3rog.blade.plugin
 
+import eu.f3rog.blade.compiler.builder.annotation.WeavePlan
 import eu.f3rog.blade.weaving.BladeWeaver
 import eu.f3rog.blade.weaving.util.IWeaver
+import eu.f3rog.blade.weaving.util.WeaveReport
 
 public final class BladeTransformer
         extends BaseTransformer {
 
-    public BladeTransformer(boolean debug) {
-        super(debug)
+    private final BladeWeaver.Engine mEngine
+    private final boolean mInline
+
+    public BladeTransformer(BladePlugin.BladeConfig config) {
+        super(config)
+        mEngine = BladeWeaver.Engine.from(config.engine)
+        mInline = config.inline
     }
 
     @Override
@@ -16,7 +23,7 @@ public final class BladeTransformer
     }
 
     @Override
-    IWeaver getWeaver(boolean debug) {
-        return new BladeWeaver(debug)
+    IWeaver getWeaver(boolean debug, Map<String, WeavePlan> plans, WeaveReport report) {
+        return new BladeWeaver(debug, mEngine, plans, report, mInline)
     }
 }
\ No newline at end of file
@@ -2,14 +2,17 @@ package eu.f3rog.blade.weaving;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-import eu.f3rog.blade.compiler.builder.annotation.WeaveParser;
+import eu.f3rog.blade.compiler.builder.annotation.WeavePlan;
 import eu.f3rog.blade.core.Weave;
 import eu.f3rog.blade.core.Weaves;
 import eu.f3rog.blade.weaving.interfaces.Interfaces;
 import eu.f3rog.blade.weaving.util.AWeaver;
+import eu.f3rog.blade.weaving.util.WeaveReport;
 import eu.f3rog.javassist.exception.AfterBurnerImpossibleException;
 import javassist.CannotCompileException;
 import javassist.ClassPool;
@@ -18,98 +21,213 @@ import javassist.CtField;
 import javassist.CtMethod;
 import javassist.NotFoundException;
 import javassist.bytecode.AnnotationsAttribute;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.ConstPool;
 import javassist.bytecode.annotation.Annotation;
 import javassist.bytecode.annotation.AnnotationMemberValue;
 import javassist.bytecode.annotation.ArrayMemberValue;
 import javassist.bytecode.annotation.MemberValue;
+import javassist.bytecode.annotation.StringMemberValue;
 
 import static eu.f3rog.blade.weaving.util.WeavingUtil.getAnnotations;
+import static eu.f3rog.blade.weaving.util.WeavingUtil.isWoven;
+import static eu.f3rog.blade.weaving.util.WeavingUtil.markWoven;
 
 public final class BladeWeaver
         extends AWeaver {
 
+    /**
+     * Engine used for weaving of statements.
+     */
+    public enum Engine {
+        /**
+         * All statements are compiled by Javassist.
+         */
+        SOURCE,
+        /**
+         * Calls of helper methods are woven directly as bytecode. Other statements are compiled by Javassist.
+         */
+        BYTECODE;
+
+        public static Engine from(String name) {
+            for (Engine engine : values()) {
+                if (engine.name().equalsIgnoreCase(name)) {
+                    return engine;
+                }
+            }
+            return null;
+        }
+    }
+
     @Override
-    public void weave(ClassPool classPool, List<CtClass> classes) {
+    public Set<CtClass> weave(ClassPool classPool, List<CtClass> classes) {
+        Set<CtClass> wovenClasses = new LinkedHashSet<>();
         for (CtClass cls : classes) {
             String className = cls.getName();
             if (className.endsWith("_Helper")) {
+                WeavePlan plan = mPlans.get(className);
+                String intoClassName = (plan != null) ? plan.getTargetName() : className.replace("_Helper", "");
+                WeaveReport.ClassReport report = mReport.forClass(intoClassName);
+                long start = System.nanoTime();
                 CtClass intoClass;
                 try {
-                    intoClass = classPool.get(className.replace("_Helper", ""));
+                    intoClass = classPool.get(intoClassName);
+                    // class files are parsed lazily
+                    intoClass.getClassFile2();
+                    cls.getClassFile2();
                 } catch (NotFoundException e) {
                     continue;
                 }
+                report.addLoad(System.nanoTime() - start);
+
+                start = System.nanoTime();
+                if (!weave(cls, intoClass, plan, report)) {
+                    continue;
+                }
+                if (inline(cls, intoClass, report)) {
+                    mRemovedClasses.add(className);
+                } else if (stripWeaveMetadata(cls, intoClass)) {
+                    // weave annotations are not needed anymore
+                    wovenClasses.add(cls);
+                }
+                report.addWeave(System.nanoTime() - start);
+                wovenClasses.add(intoClass);
 
-                weave(cls, intoClass);
+                // Dagger injector may be changed by interface weaving
+                CtClass injectorClass = findModified(classPool, intoClass.getName() + "_MembersInjector");
+                if (injectorClass != null) {
+                    wovenClasses.add(injectorClass);
+                }
             }
         }
+        return wovenClasses;
     }
 
-    private static class Metadata {
-        String into;
-        CtClass[] args;
-        String statement;
+    @Override
+    public Set<String> getRemovedClasses() {
+        return mRemovedClasses;
     }
 
-    private final static class MetadataComparator
-            implements Comparator<Metadata> {
-
-        @Override
-        public int compare(Metadata l, Metadata r) {
-            // order descending based on 'into' value - higher priority should be first
-            if (l == null || l.into == null) {
-                return 1;
-            }
-            if (r == null || r.into == null) {
-                return -1;
-            }
-            return -l.into.compareTo(r.into);
+    private static CtClass findModified(ClassPool classPool, String className) {
+        if (classPool.find(className) == null) {
+            return null;
+        }
+        try {
+            CtClass cls = classPool.get(className);
+            return cls.isModified() ? cls : null;
+        } catch (NotFoundException e) {
+            return null;
         }
     }
 
-    private static final String HELPER_NAME_FORMAT = "%s.%s_Helper";
+    private final DirectCallWeaver mDirectCallWeaver;
+    private final Map<String, WeavePlan> mPlans;
+    private final WeaveReport mReport;
+    private final HelperInliner mHelperInliner;
+    private final Set<String> mRemovedClasses = new LinkedHashSet<>();
 
     /**
      * Constructor
      */
     public BladeWeaver(boolean debug) {
+        this(debug, Engine.SOURCE);
+    }
+
+    /**
+     * Constructor
+     */
+    public BladeWeaver(boolean debug, Engine engine) {
+        this(debug, engine, Collections.<String, WeavePlan>emptyMap());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param plans Helper names mapped to their weave plans. Helpers without a plan are woven based on their annotations.
+     */
+    public BladeWeaver(boolean debug, Engine engine, Map<String, WeavePlan> plans) {
+        this(debug, engine, plans, WeaveReport.DISABLED);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param plans  Helper names mapped to their weave plans. Helpers without a plan are woven based on their annotations.
+     * @param report Report which receives duration of each weaving step.
+     */
+    public BladeWeaver(boolean debug, Engine engine, Map<String, WeavePlan> plans, WeaveReport report) {
+        this(debug, engine, plans, report, false);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param plans  Helper names mapped to their weave plans. Helpers without a plan are woven based on their annotations.
+     * @param report Report which receives duration of each weaving step.
+     * @param inline If <code>true</code>, than helpers are inlined into their targets and removed, if possible.
+     */
+    public BladeWeaver(boolean debug, Engine engine, Map<String, WeavePlan> plans, WeaveReport report, boolean inline) {
         super(debug);
+        mDirectCallWeaver = (engine == Engine.BYTECODE) ? new DirectCallWeaver() : null;
+        mPlans = plans;
+        mReport = report;
+        mHelperInliner = inline ? new HelperInliner() : null;
     }
 
     public void weave(CtClass helperClass, CtClass intoClass) {
+        weave(helperClass, intoClass, null, mReport.forClass(intoClass.getName()));
+    }
+
+    /**
+     * @return <code>false</code> if target was already woven (nothing was changed)
+     */
+    private boolean weave(CtClass helperClass, CtClass intoClass, WeavePlan plan, WeaveReport.ClassReport report) {
+        if (isWoven(intoClass)) {
+            lognl("~ '%s' is already woven", intoClass.getName());
+            return false;
+        }
+
         lognl("|~ Weaving start '%s'", intoClass.getName());
         try {
             ClassPool classPool = intoClass.getClassPool();
 
-            // get field metadata
-            for (CtField field : helperClass.getDeclaredFields()) {
-                lognl("field '%s'", field.getName());
-
-                List<Metadata> metadata = loadWeaveMetadata(classPool, field);
-                weave(metadata, intoClass, field);
+            long start = System.nanoTime();
+            if (plan == null) {
+                lognl("no weave plan => reading annotations");
+                plan = readWeavePlan(helperClass, intoClass.getName());
             }
 
-            // get method metadata
-            List<Metadata> allMethodMetadata = new ArrayList<>();
-            for (CtMethod method : helperClass.getDeclaredMethods()) {
-                lognl("method '%s'", method.getName());
-
-                List<Metadata> metadata = loadWeaveMetadata(classPool, method);
-                allMethodMetadata.addAll(metadata);
+            // each type is loaded only once
+            List<String> typeNames = plan.getTypes();
+            CtClass[] types = new CtClass[typeNames.size()];
+            for (int i = 0; i < types.length; i++) {
+                types[i] = classPool.get(typeNames.get(i));
             }
-            // sort metadata based on priority and weave them
-            Collections.sort(allMethodMetadata, new MetadataComparator());
-            for (Metadata metadata : allMethodMetadata) {
-                weave(metadata, intoClass, null);
+            report.addStep("plan", System.nanoTime() - start);
+
+            // entries are already sorted based on priority
+            for (WeavePlan.Entry entry : plan.getEntries()) {
+                int[] argIndexes = entry.getArgs();
+                CtClass[] args = new CtClass[argIndexes.length];
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = types[argIndexes[i]];
+                }
+                start = System.nanoTime();
+                weave(entry, args, intoClass, helperClass);
+                report.addStep(getStepName(entry), System.nanoTime() - start);
             }
 
             // weave interfaces
             for (CtClass interfaceClass : helperClass.getInterfaces()) {
                 lognl("interface '%s'", interfaceClass.getName());
-                Interfaces.weaveInterface(interfaceClass, intoClass, getJavassistHelper());
+                start = System.nanoTime();
+                Interfaces.weaveInterface(interfaceClass, intoClass, getJavassistHelper(), report);
+                report.addStep("interface " + interfaceClass.getName(), System.nanoTime() - start);
             }
 
+            markWoven(intoClass);
             lognl("~| Weaving done '%s'", intoClass.getName());
+            return true;
         } catch (Exception e) {
             lognl("");
             lognl("~| Weaving failed '%s'", intoClass.getName());
@@ -119,179 +237,263 @@ public final class BladeWeaver
         }
     }
 
-    private void weave(List<Metadata> m, CtClass intoClass, CtField helperField) throws NotFoundException, CannotCompileException, AfterBurnerImpossibleException {
-        for (int i = 0, c = m.size(); i < c; i++) {
-            Metadata metadata = m.get(i);
-            weave(metadata, intoClass, helperField);
-        }
-    }
-
-    private void weave(Metadata metadata, CtClass intoClass, CtField helperField) throws NotFoundException, CannotCompileException, AfterBurnerImpossibleException {
-        if (metadata == null) {
-            lognl(" ~x nowhere");
-            return;
-        }
-
-        if (helperField != null && Weave.WEAVE_FIELD.equals(metadata.into)) {
-            // weave field
-            CtField f = new CtField(helperField.getType(), helperField.getName(), intoClass);
-            f.setModifiers(helperField.getModifiers());
-
-            log(" ~> field '%s'", f.getName());
-            if (metadata.statement != null) {
-                lognl(" ~~~ %s", metadata.statement);
-                intoClass.addField(f, CtField.Initializer.byExpr(metadata.statement));
-            } else {
-                lognl(" ~~~ without statement");
-                intoClass.addField(f);
+    private void weave(WeavePlan.Entry entry, CtClass[] args, CtClass intoClass, CtClass helperClass) throws NotFoundException, CannotCompileException, AfterBurnerImpossibleException, BadBytecode {
+        String statement = entry.getStatement();
+        switch (entry.getKind()) {
+            case FIELD: {
+                // weave field
+                CtField helperField = helperClass.getDeclaredField(entry.getName());
+                CtField f = new CtField(helperField.getType(), helperField.getName(), intoClass);
+                f.setModifiers(helperField.getModifiers());
+
+                log(" ~> field '%s'", f.getName());
+                if (statement != null) {
+                    lognl(" ~~~ %s", statement);
+                    intoClass.addField(f, CtField.Initializer.byExpr(statement));
+                } else {
+                    lognl(" ~~~ without statement");
+                    intoClass.addField(f);
+                }
+                break;
             }
-        } else {
-            String body = "{ " + metadata.statement + " }";
-
-            if (Weave.WEAVE_CONSTRUCTOR.equals(metadata.into)) {
+            case CONSTRUCTOR: {
+                String body = "{ " + statement + " }";
                 log(" ~> constructor");
                 // weave into constructor
-                getJavassistHelper().insertConstructor(body, intoClass, metadata.args);
+                getJavassistHelper().insertConstructor(body, intoClass, args);
                 lognl(" ~~~ %s", body);
-            } else {
-                // weave into method
-                WeaveParser.Into into = WeaveParser.parseInto(metadata.into);
+                break;
+            }
+            case METHOD: {
+                String body = "{ " + statement + " }";
+                String methodName = entry.getName();
 
-                if (into.shouldRename()) {
-                    lognl(" ~> rename '%s' to '%s'", into.getMethodName(), into.getRename());
-                    getJavassistHelper().renameMethod(intoClass, into.getMethodName(), into.getRename(), metadata.args);
+                if (entry.shouldRename()) {
+                    lognl(" ~> rename '%s' to '%s'", methodName, entry.getRename());
+                    getJavassistHelper().renameMethod(intoClass, methodName, entry.getRename(), args);
                 }
 
-                log(" ~> method '%s' %s with %s priority", into.getMethodName(), into.getMethodWeaveType(), into.getPriority());
+                log(" ~> method '%s' %s with %s priority", methodName, entry.getMethodWeaveType(), entry.getPriority());
                 lognl(" ~~~ %s", body);
 
-                switch (into.getMethodWeaveType()) {
+                if (mDirectCallWeaver != null
+                        && mDirectCallWeaver.weave(statement, intoClass, methodName, args, entry.getMethodWeaveType())) {
+                    lognl(" ~~~ woven as bytecode");
+                    return;
+                }
+
+                switch (entry.getMethodWeaveType()) {
                     case BEFORE_BODY:
-                        getJavassistHelper().insertBeforeBody(body, intoClass, into.getMethodName(), metadata.args);
+                        getJavassistHelper().insertBeforeBody(body, intoClass, methodName, args);
                         break;
                     case AFTER_BODY:
-                        getJavassistHelper().insertAfterBody(body, intoClass, into.getMethodName(), metadata.args);
+                        getJavassistHelper().insertAfterBody(body, intoClass, methodName, args);
                         break;
                     case BEFORE_SUPER:
                         try {
-                            getJavassistHelper().insertBeforeSuper(body, intoClass, into.getMethodName(), metadata.args);
+                            getJavassistHelper().insertBeforeSuper(body, intoClass, methodName, args);
                         } catch (Exception e) { // put at beginning if super not found
-                            getJavassistHelper().insertBeforeBody(body, intoClass, into.getMethodName(), metadata.args);
+                            getJavassistHelper().insertBeforeBody(body, intoClass, methodName, args);
                         }
                         break;
                     case AFTER_SUPER:
                         try {
-                            getJavassistHelper().insertAfterSuper(body, intoClass, into.getMethodName(), metadata.args);
+                            getJavassistHelper().insertAfterSuper(body, intoClass, methodName, args);
                         } catch (Exception e) { // put at beginning if super not found
-                            getJavassistHelper().insertBeforeBody(body, intoClass, into.getMethodName(), metadata.args);
+                            getJavassistHelper().insertBeforeBody(body, intoClass, methodName, args);
                         }
                         break;
                     default:
                         throw new IllegalStateException();
                 }
+                break;
             }
+            default:
+                throw new IllegalStateException();
         }
     }
 
-    private CtClass getHelper(CtClass cls) throws NotFoundException {
-        return cls.getClassPool()
-                .get(String.format(HELPER_NAME_FORMAT, cls.getPackageName(), cls.getSimpleName()));
-    }
+    /**
+     * Inlines given helper into its target if inlining is enabled.
+     *
+     * @return <code>true</code> if helper was inlined and it should be removed
+     */
+    private boolean inline(CtClass helperClass, CtClass intoClass, WeaveReport.ClassReport report) {
+        if (mHelperInliner == null) {
+            return false;
+        }
 
-    private boolean hasHelper(CtClass cls) {
+        long start = System.nanoTime();
         try {
-            return getHelper(cls) != null;
-        } catch (NotFoundException e) {
-            return false;
+            if (mHelperInliner.inline(helperClass, intoClass)) {
+                lognl("~ helper '%s' inlined into '%s'", helperClass.getName(), intoClass.getName());
+                return true;
+            } else {
+                lognl("~ helper '%s' cannot be inlined", helperClass.getName());
+                return false;
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        } finally {
+            report.addStep("inline", System.nanoTime() - start);
         }
     }
 
-    private List<Metadata> loadWeaveMetadata(ClassPool classPool, CtMethod method) throws NotFoundException {
-        AnnotationsAttribute attr = getAnnotations(method);
-        if (attr != null) {
-            return loadWeaveMetadata(classPool, attr);
+    /**
+     * Removes {@link Weave} and {@link Weaves} annotations of given helper. Fields which carry only
+     * {@link Weave#WEAVE_FIELD} metadata (not used by any code) are removed too.
+     *
+     * @return <code>true</code> if helper was changed
+     */
+    private boolean stripWeaveMetadata(CtClass helperClass, CtClass intoClass) {
+        boolean changed = false;
+        for (CtField field : helperClass.getDeclaredFields()) {
+            AnnotationsAttribute attr = getAnnotations(field);
+            if (isFieldWeave(attr) && !isFieldUsed(field, helperClass, intoClass)) {
+                lognl(" ~> remove field '%s'", field.getName());
+                try {
+                    helperClass.removeField(field);
+                } catch (NotFoundException e) {
+                    throw new IllegalStateException(e);
+                }
+                changed = true;
+            } else {
+                changed |= removeWeaveAnnotations(field.getFieldInfo().getAttributes(), attr);
+            }
+        }
+        for (CtMethod method : helperClass.getDeclaredMethods()) {
+            changed |= removeWeaveAnnotations(method.getMethodInfo().getAttributes(), getAnnotations(method));
         }
 
-        return Collections.emptyList();
+        if (changed) {
+            lognl("~ weave metadata removed from '%s'", helperClass.getName());
+            // drop strings of removed annotations from constant pool
+            helperClass.rebuildClassFile();
+        }
+        return changed;
     }
 
-    private List<Metadata> loadWeaveMetadata(ClassPool classPool, CtField field) throws NotFoundException {
-        AnnotationsAttribute attr = getAnnotations(field);
-        if (attr != null) {
-            return loadWeaveMetadata(classPool, attr);
+    private static boolean isFieldWeave(AnnotationsAttribute attr) {
+        for (Annotation weave : getWeaveAnnotations(attr)) {
+            if (Weave.WEAVE_FIELD.equals(getString(weave, "into"))) {
+                return true;
+            }
         }
+        return false;
+    }
 
-        return Collections.emptyList();
+    /**
+     * Checks if given helper field is accessed by the helper itself (e.g. its initializer) or by the target.
+     */
+    private static boolean isFieldUsed(CtField field, CtClass helperClass, CtClass intoClass) {
+        for (CtClass cls : new CtClass[]{helperClass, intoClass}) {
+            ConstPool constPool = cls.getClassFile2().getConstPool();
+            for (int i = 1; i < constPool.getSize(); i++) {
+                if (constPool.getTag(i) == ConstPool.CONST_Fieldref
+                        && field.getName().equals(constPool.getFieldrefName(i))
+                        && helperClass.getName().equals(constPool.getFieldrefClassName(i))) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
-    private List<Metadata> loadWeaveMetadata(ClassPool classPool, AnnotationsAttribute attr) throws NotFoundException {
-        Annotation a;
+    private static boolean removeWeaveAnnotations(List<?> attributes, AnnotationsAttribute attr) {
+        if (attr == null) {
+            return false;
+        }
 
-        a = attr.getAnnotation(Weave.class.getName());
-        if (a != null) {
-            return Collections.singletonList(readWeaveAnnotation(a, classPool));
+        Annotation[] annotations = attr.getAnnotations();
+        List<Annotation> kept = new ArrayList<>(annotations.length);
+        for (Annotation annotation : annotations) {
+            String typeName = annotation.getTypeName();
+            if (!Weave.class.getName().equals(typeName) && !Weaves.class.getName().equals(typeName)) {
+                kept.add(annotation);
+            }
+        }
+        if (kept.size() == annotations.length) {
+            return false;
         }
 
-        a = attr.getAnnotation(Weaves.class.getName());
-        if (a != null) {
-            return readWeavesAnnotation(a, classPool);
+        if (kept.isEmpty()) {
+            attributes.remove(attr);
+        } else {
+            attr.setAnnotations(kept.toArray(new Annotation[kept.size()]));
         }
+        return true;
+    }
 
-        return Collections.emptyList();
+    private static String getStepName(WeavePlan.Entry entry) {
+        switch (entry.getKind()) {
+            case FIELD:
+                return "field " + entry.getName();
+            case CONSTRUCTOR:
+                return "constructor";
+            default:
+                return String.format("method %s %s", entry.getName(), entry.getMethodWeaveType());
+        }
     }
 
+    /**
+     * Creates weave plan from annotations of given helper. It is used for helpers generated without a plan.
+     */
+    private static WeavePlan readWeavePlan(CtClass helperClass, String targetName) {
+        WeavePlan.Builder plan = new WeavePlan.Builder(targetName);
+        for (CtField field : helperClass.getDeclaredFields()) {
+            for (Annotation weave : getWeaveAnnotations(getAnnotations(field))) {
+                plan.addFieldWeave(field.getName(), getString(weave, "into"), getStrings(weave, "args"), getString(weave, "statement"));
+            }
+        }
+        for (CtMethod method : helperClass.getDeclaredMethods()) {
+            for (Annotation weave : getWeaveAnnotations(getAnnotations(method))) {
+                plan.addMethodWeave(getString(weave, "into"), getStrings(weave, "args"), getString(weave, "statement"));
+            }
+        }
+        return plan.build();
+    }
 
-    private Metadata readWeaveAnnotation(Annotation weaveAnnotation, ClassPool classPool) throws NotFoundException {
-        Metadata metadata = new Metadata();
+    private static List<Annotation> getWeaveAnnotations(AnnotationsAttribute attr) {
+        if (attr == null) {
+            return Collections.emptyList();
+        }
 
-        // get INTO
-        MemberValue val = weaveAnnotation.getMemberValue("into");
-        if (val != null) {
-            metadata.into = val.toString().replaceAll("\"", "");
+        Annotation a = attr.getAnnotation(Weave.class.getName());
+        if (a != null) {
+            return Collections.singletonList(a);
         }
-        // get INTO ARGS
-        metadata.args = readArgs(weaveAnnotation, classPool);
-        // get STATEMENT
-        val = weaveAnnotation.getMemberValue("statement");
-        if (val != null) {
-            metadata.statement = val.toString().replaceAll("\"", "");
-            metadata.statement = metadata.statement.replaceAll("'", "\"");
-            if (metadata.statement.length() == 0) {
-                metadata.statement = null;
+
+        a = attr.getAnnotation(Weaves.class.getName());
+        if (a != null) {
+            ArrayMemberValue arrayMemberValue = (ArrayMemberValue) a.getMemberValue("value");
+            if (arrayMemberValue != null) {
+                MemberValue[] memberValues = arrayMemberValue.getValue();
+                List<Annotation> annotations = new ArrayList<>(memberValues.length);
+                for (MemberValue memberValue : memberValues) {
+                    annotations.add(((AnnotationMemberValue) memberValue).getValue());
+                }
+                return annotations;
             }
         }
 
-        return metadata;
+        return Collections.emptyList();
     }
 
-    private CtClass[] readArgs(Annotation weaveAnnotation, ClassPool classPool) throws NotFoundException {
-        ArrayMemberValue arrayMemberValue = (ArrayMemberValue) weaveAnnotation.getMemberValue("args");
-        if (arrayMemberValue != null) {
-            MemberValue[] memberValues = arrayMemberValue.getValue();
-            CtClass[] classes = new CtClass[memberValues.length];
-            for (int i = 0; i < memberValues.length; i++) {
-                String className = memberValues[i].toString().replaceAll("\"", "");
-                classes[i] = classPool.get(className);
-            }
-            return classes;
-        } else {
-            return new CtClass[0];
-        }
+    private static String getString(Annotation annotation, String name) {
+        StringMemberValue value = (StringMemberValue) annotation.getMemberValue(name);
+        return (value != null) ? value.getValue() : null;
     }
 
-    private List<Metadata> readWeavesAnnotation(Annotation weavesAnnotation, ClassPool classPool) throws NotFoundException {
-        ArrayMemberValue arrayMemberValue = (ArrayMemberValue) weavesAnnotation.getMemberValue("value");
-        if (arrayMemberValue != null) {
-            MemberValue[] memberValues = arrayMemberValue.getValue();
-            List<Metadata> annotations = new ArrayList<>(memberValues.length);
-            for (int i = 0; i < memberValues.length; i++) {
-                AnnotationMemberValue memberValue = (AnnotationMemberValue) memberValues[i];
-                Metadata m = readWeaveAnnotation(memberValue.getValue(), classPool);
-                annotations.add(m);
-            }
-            return annotations;
-        } else {
+    private static List<String> getStrings(Annotation annotation, String name) {
+        ArrayMemberValue arrayMemberValue = (ArrayMemberValue) annotation.getMemberValue(name);
+        if (arrayMemberValue == null) {
             return Collections.emptyList();
         }
+        MemberValue[] memberValues = arrayMemberValue.getValue();
+        List<String> values = new ArrayList<>(memberValues.length);
+        for (MemberValue memberValue : memberValues) {
+            values.add(((StringMemberValue) memberValue).getValue());
+        }
+        return values;
     }
 }
@@ -0,0 +1,190 @@
+package eu.f3rog.blade.weaving;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import eu.f3rog.blade.compiler.builder.annotation.WeaveBuilder;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtMethod;
+import javassist.Modifier;
+import javassist.NotFoundException;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.Bytecode;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.CodeIterator;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.Opcode;
+
+/**
+ * Class {@link DirectCallWeaver} weaves statements calling a static helper method directly as bytecode,
+ * without compiling them from source.
+ * <p>
+ * Only statements like <code>a.b.Helper.method(this, $1, (a.b.Type) $2);</code> woven before or after body of
+ * a method declared in the target class are supported. Anything else has to be woven by the source compiler.
+ *
+ * @author FrantisekGazo
+ */
+final class DirectCallWeaver {
+
+    private static final Pattern CALL = Pattern.compile("^\\s*([\\w$.]+)\\.([\\w$]+)\\s*\\((.*)\\)\\s*;\\s*$");
+    private static final Pattern ARG = Pattern.compile("^\\s*(?:\\(\\s*([\\w$.]+)\\s*\\)\\s*)?(this|\\$\\d+)\\s*$");
+
+    /**
+     * Weaves given statement into given method.
+     *
+     * @return <code>false</code> if statement is not supported (nothing was changed)
+     */
+    boolean weave(String statement, CtClass intoClass, String methodName, CtClass[] args,
+                  WeaveBuilder.MethodWeaveType weaveType) throws NotFoundException, BadBytecode {
+        if (statement == null
+                || (weaveType != WeaveBuilder.MethodWeaveType.BEFORE_BODY && weaveType != WeaveBuilder.MethodWeaveType.AFTER_BODY)) {
+            return false;
+        }
+
+        Matcher call = CALL.matcher(statement);
+        if (!call.matches()) {
+            return false;
+        }
+
+        CtMethod intoMethod;
+        try {
+            intoMethod = intoClass.getDeclaredMethod(methodName, args);
+        } catch (NotFoundException e) {
+            // method would have to be created
+            return false;
+        }
+        if (Modifier.isAbstract(intoMethod.getModifiers()) || Modifier.isNative(intoMethod.getModifiers())) {
+            return false;
+        }
+
+        ClassPool classPool = intoClass.getClassPool();
+        CtClass ownerClass;
+        try {
+            ownerClass = classPool.get(call.group(1));
+        } catch (NotFoundException e) {
+            return false;
+        }
+
+        List<String> callArgs = splitArgs(call.group(3));
+        CtMethod calledMethod = findStaticMethod(ownerClass, call.group(2), callArgs.size());
+        if (calledMethod == null) {
+            return false;
+        }
+
+        MethodInfo methodInfo = intoMethod.getMethodInfo();
+        Bytecode code = new Bytecode(methodInfo.getConstPool());
+        boolean isStatic = Modifier.isStatic(intoMethod.getModifiers());
+        CtClass[] paramTypes = intoMethod.getParameterTypes();
+        CtClass[] calledParamTypes = calledMethod.getParameterTypes();
+        for (int i = 0; i < callArgs.size(); i++) {
+            Matcher arg = ARG.matcher(callArgs.get(i));
+            if (!arg.matches()) {
+                return false;
+            }
+
+            CtClass argType;
+            if ("this".equals(arg.group(2))) {
+                if (isStatic) {
+                    return false;
+                }
+                argType = intoClass;
+                code.addAload(0);
+            } else {
+                int param = Integer.parseInt(arg.group(2).substring(1));
+                if (param < 1 || param > paramTypes.length) {
+                    return false;
+                }
+                argType = paramTypes[param - 1];
+                code.addLoad(getLocalIndex(isStatic, paramTypes, param), argType);
+            }
+
+            if (arg.group(1) != null) {
+                if (argType.isPrimitive()) {
+                    return false;
+                }
+                argType = classPool.get(arg.group(1));
+                code.addCheckcast(argType);
+            }
+
+            if (!isAssignable(argType, calledParamTypes[i])) {
+                return false;
+            }
+        }
+        code.addInvokestatic(ownerClass, calledMethod.getName(), calledMethod.getMethodInfo2().getDescriptor());
+        CtClass returnType = calledMethod.getReturnType();
+        if (returnType == CtClass.longType || returnType == CtClass.doubleType) {
+            code.addOpcode(Opcode.POP2);
+        } else if (returnType != CtClass.voidType) {
+            code.addOpcode(Opcode.POP);
+        }
+
+        CodeAttribute codeAttribute = methodInfo.getCodeAttribute();
+        CodeIterator iterator = codeAttribute.iterator();
+        if (weaveType == WeaveBuilder.MethodWeaveType.BEFORE_BODY) {
+            // jumps to the first instruction (loops) must not execute the call again
+            iterator.insertEx(0, code.get());
+        } else {
+            List<Integer> returns = new ArrayList<>();
+            while (iterator.hasNext()) {
+                int index = iterator.next();
+                int opcode = iterator.byteAt(index);
+                if (opcode >= Opcode.IRETURN && opcode <= Opcode.RETURN) {
+                    returns.add(index);
+                }
+            }
+            // insert from the end, so indexes of previous returns stay valid
+            Collections.reverse(returns);
+            for (int index : returns) {
+                // jumps to the return have to execute the call too
+                iterator.insert(index, code.get());
+            }
+        }
+        codeAttribute.computeMaxStack();
+        methodInfo.rebuildStackMapIf6(classPool, intoClass.getClassFile());
+        return true;
+    }
+
+    private static List<String> splitArgs(String args) {
+        if (args.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>();
+        Collections.addAll(result, args.split(","));
+        return result;
+    }
+
+    private static CtMethod findStaticMethod(CtClass ownerClass, String name, int paramCount) throws NotFoundException {
+        CtMethod found = null;
+        for (CtMethod method : ownerClass.getDeclaredMethods()) {
+            if (method.getName().equals(name)
+                    && Modifier.isStatic(method.getModifiers())
+                    && method.getParameterTypes().length == paramCount) {
+                if (found != null) {
+                    // overloaded => let compiler choose
+                    return null;
+                }
+                found = method;
+            }
+        }
+        return found;
+    }
+
+    private static int getLocalIndex(boolean isStatic, CtClass[] paramTypes, int param) {
+        int index = isStatic ? 0 : 1;
+        for (int i = 0; i < param - 1; i++) {
+            index += (paramTypes[i] == CtClass.longType || paramTypes[i] == CtClass.doubleType) ? 2 : 1;
+        }
+        return index;
+    }
+
+    private static boolean isAssignable(CtClass from, CtClass to) throws NotFoundException {
+        if (from.isPrimitive() || to.isPrimitive()) {
+            return from == to;
+        }
+        return from.subtypeOf(to);
+    }
+}
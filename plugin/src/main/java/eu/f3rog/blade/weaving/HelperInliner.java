@@ -0,0 +1,167 @@
+package eu.f3rog.blade.weaving;
+
+import javassist.CannotCompileException;
+import javassist.CodeConverter;
+import javassist.CtBehavior;
+import javassist.CtClass;
+import javassist.CtMethod;
+import javassist.Modifier;
+import javassist.bytecode.AccessFlag;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.CodeIterator;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.Opcode;
+
+/**
+ * Class {@link HelperInliner} copies methods of a woven helper into its target as private synthetic methods
+ * and redirects all calls of the helper to these copies. The helper is not needed at runtime afterwards.
+ * <p>
+ * Only helpers with static methods and without fields, interfaces or nested classes can be inlined.
+ * Helpers are expected to be used only by their targets, because calls from other classes are not redirected.
+ *
+ * @author FrantisekGazo
+ */
+final class HelperInliner {
+
+    private static final String METHOD_PREFIX = "blade$";
+
+    /**
+     * Inlines given helper into given target.
+     *
+     * @return <code>false</code> if helper cannot be inlined (nothing was changed)
+     */
+    boolean inline(CtClass helperClass, CtClass intoClass) throws CannotCompileException, BadBytecode {
+        if (!canInline(helperClass, intoClass)) {
+            return false;
+        }
+
+        ConstPool constPool = intoClass.getClassFile2().getConstPool();
+        CodeConverter converter = new CodeConverter();
+        for (CtMethod method : helperClass.getDeclaredMethods()) {
+            // class names are not mapped => calls between helper methods are redirected too
+            MethodInfo methodInfo = new MethodInfo(constPool, getInlinedName(method), method.getMethodInfo2(), null);
+            methodInfo.setAccessFlags(AccessFlag.PRIVATE | AccessFlag.STATIC | AccessFlag.SYNTHETIC);
+            CtMethod copy = CtMethod.make(methodInfo, intoClass);
+            intoClass.addMethod(copy);
+            converter.redirectMethodCall(method, copy);
+        }
+        intoClass.instrument(converter);
+
+        // drop references of the helper from constant pool
+        intoClass.rebuildClassFile();
+        return true;
+    }
+
+    private static boolean canInline(CtClass helperClass, CtClass intoClass) throws BadBytecode {
+        if (helperClass.isInterface() || intoClass.isInterface()
+                || helperClass.getClassFile2().getInterfaces().length > 0
+                || helperClass.getDeclaredFields().length > 0
+                || helperClass.getClassInitializer() != null
+                || hasNestedClasses(helperClass)) {
+            return false;
+        }
+
+        CtMethod[] helperMethods = helperClass.getDeclaredMethods();
+        for (CtMethod method : helperMethods) {
+            int modifiers = method.getModifiers();
+            if (!Modifier.isStatic(modifiers) || Modifier.isNative(modifiers) || hasMethod(intoClass, method)) {
+                return false;
+            }
+        }
+
+        String helperName = helperClass.getName();
+        return callsOnlyStaticMethods(helperMethods, helperName)
+                && callsOnlyStaticMethods(intoClass.getDeclaredBehaviors(), helperName);
+    }
+
+    private static boolean hasNestedClasses(CtClass helperClass) {
+        try {
+            return helperClass.getNestedClasses().length > 0;
+        } catch (Exception e) {
+            return true;
+        }
+    }
+
+    private static boolean hasMethod(CtClass intoClass, CtMethod method) {
+        String name = getInlinedName(method);
+        String descriptor = method.getMethodInfo2().getDescriptor();
+        for (CtMethod intoMethod : intoClass.getDeclaredMethods()) {
+            if (name.equals(intoMethod.getName()) && descriptor.equals(intoMethod.getMethodInfo2().getDescriptor())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean callsOnlyStaticMethods(CtBehavior[] behaviors, String helperName) throws BadBytecode {
+        for (CtBehavior behavior : behaviors) {
+            if (!callsOnlyStaticMethods(behavior.getMethodInfo2(), helperName)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if given method uses the helper only by calling its static methods, which can be redirected.
+     */
+    private static boolean callsOnlyStaticMethods(MethodInfo methodInfo, String helperName) throws BadBytecode {
+        CodeAttribute codeAttribute = methodInfo.getCodeAttribute();
+        if (codeAttribute == null) {
+            return true;
+        }
+
+        ConstPool constPool = methodInfo.getConstPool();
+        CodeIterator iterator = codeAttribute.iterator();
+        while (iterator.hasNext()) {
+            int index = iterator.next();
+            String className;
+            switch (iterator.byteAt(index)) {
+                case Opcode.NEW:
+                case Opcode.CHECKCAST:
+                case Opcode.INSTANCEOF:
+                case Opcode.ANEWARRAY:
+                case Opcode.MULTIANEWARRAY:
+                    className = constPool.getClassInfo(iterator.u16bitAt(index + 1));
+                    break;
+                case Opcode.LDC:
+                    className = getClassConstant(constPool, iterator.byteAt(index + 1));
+                    break;
+                case Opcode.LDC_W:
+                    className = getClassConstant(constPool, iterator.u16bitAt(index + 1));
+                    break;
+                case Opcode.GETFIELD:
+                case Opcode.PUTFIELD:
+                case Opcode.GETSTATIC:
+                case Opcode.PUTSTATIC:
+                    className = constPool.getFieldrefClassName(iterator.u16bitAt(index + 1));
+                    break;
+                case Opcode.INVOKEVIRTUAL:
+                case Opcode.INVOKESPECIAL:
+                    className = constPool.getMethodrefClassName(iterator.u16bitAt(index + 1));
+                    break;
+                case Opcode.INVOKEINTERFACE:
+                    className = constPool.getInterfaceMethodrefClassName(iterator.u16bitAt(index + 1));
+                    break;
+                default:
+                    // static calls are redirected
+                    className = null;
+                    break;
+            }
+            if (helperName.equals(className)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String getClassConstant(ConstPool constPool, int index) {
+        return (constPool.getTag(index) == ConstPool.CONST_Class) ? constPool.getClassInfo(index) : null;
+    }
+
+    private static String getInlinedName(CtMethod method) {
+        return METHOD_PREFIX + method.getName();
+    }
+}
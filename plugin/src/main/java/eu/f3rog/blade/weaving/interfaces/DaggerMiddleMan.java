@@ -10,7 +10,12 @@ import javassist.ClassPool;
 import javassist.CtClass;
 import javassist.CtMethod;
 import javassist.NotFoundException;
-import javassist.expr.FieldAccess;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.CodeIterator;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.Opcode;
 import javassist.expr.MethodCall;
 
 /**
@@ -20,7 +25,15 @@ import javassist.expr.MethodCall;
  */
 final class DaggerMiddleMan {
 
+    private static final String GET_METHOD_NAME = "get";
+    private static final String GET_METHOD_DESCRIPTOR = "()Ljava/lang/Object;";
+
     void weaveFor(final CtClass injectedClass, List<String> presenterFieldNames, String wrapMethod, final JavassistHelper javassistHelper) {
+        // nothing to wrap => injector stays as it is
+        if (presenterFieldNames.isEmpty()) {
+            return;
+        }
+
         final ClassPool classPool = injectedClass.getClassPool();
 
         CtClass injectorClass;
@@ -31,8 +44,6 @@ final class DaggerMiddleMan {
         }
 
         try {
-            //System.out.printf(" ~> %s\n", injectorClass.getName());
-
             DaggerMethodEditor editor = new DaggerMethodEditor(presenterFieldNames, wrapMethod);
             javassistHelper.editMethod(editor, injectorClass, "injectMembers", injectedClass);
         } catch (Exception e) {
@@ -40,78 +51,127 @@ final class DaggerMiddleMan {
         }
     }
 
+    private static boolean isProviderGet(String methodName, String descriptor) {
+        return GET_METHOD_NAME.equals(methodName) && GET_METHOD_DESCRIPTOR.equals(descriptor);
+    }
+
+    /**
+     * Field injected by Dagger (<code>instance.instanceField = providerField.get();</code>).
+     */
+    private static final class Injection {
+
+        private final String mProviderField;
+        private String mInstanceField;
+
+        Injection(String providerField) {
+            mProviderField = providerField;
+        }
+    }
+
     private static final class DaggerMethodEditor
             extends MethodEditor {
 
         private final List<String> mPresenterFieldNames;
         private final String mWrapMethod;
-        private final List<String> mFieldAccessList;
-        private int mCurrentFieldAccess;
-        private boolean mFindFields;
+        private List<Injection> mInjections;
+        private int mCurrentCall;
 
         DaggerMethodEditor(List<String> presenterFieldNames, String wrapMethod) {
             mPresenterFieldNames = presenterFieldNames;
             mWrapMethod = wrapMethod;
-            mFieldAccessList = new ArrayList<>();
-            mCurrentFieldAccess = 0;
-            mFindFields = false;
-        }
-
-        @Override
-        public void edit(FieldAccess f) throws CannotCompileException {
-            super.edit(f);
-
-            if (mFindFields) {
-                String fieldName = f.getFieldName();
-                //System.out.printf("field access '%s' ...\n", fieldName);
-
-                mFieldAccessList.add(fieldName);
-            } else {
-                mCurrentFieldAccess += 1;
-            }
         }
 
         @Override
         public void edit(MethodCall m) throws CannotCompileException {
             super.edit(m);
 
-            if (mFindFields) {
-                return;
-            }
-
-            if (!m.getMethodName().equals("get")) {
+            if (!isProviderGet(m.getMethodName(), m.getSignature())) {
                 return;
             }
 
-            String providerField = mFieldAccessList.get(mCurrentFieldAccess - 1);
-            String instanceField = mFieldAccessList.get(mCurrentFieldAccess);
-
-            if (!mPresenterFieldNames.contains(instanceField)) {
+            // calls are visited in the same order as they were found
+            Injection injection = mInjections.get(mCurrentCall++);
+            if (injection == null) {
                 return;
             }
 
-            //System.out.printf("replacing %s ", m.getMethodName());
-
             String statement = String.format("{ $_ = %s(%s, \"%s\", %s); }",
-                    mWrapMethod, "instance", instanceField, providerField);
-
-            //System.out.printf("with %s\n", statement);
-
+                    mWrapMethod, "instance", injection.mInstanceField, injection.mProviderField);
             m.replace(statement);
         }
 
         @Override
         public void instrument(CtMethod method) throws CannotCompileException {
-            mFieldAccessList.clear();
-            mCurrentFieldAccess = 0;
+            try {
+                mInjections = findInjections(method.getMethodInfo2());
+            } catch (BadBytecode e) {
+                throw new CannotCompileException(e);
+            }
+            mCurrentCall = 0;
+
+            // method is changed only if it injects a presenter
+            for (Injection injection : mInjections) {
+                if (injection != null) {
+                    method.instrument(this);
+                    return;
+                }
+            }
+        }
 
-            // go through the method and find all field accesses
-            mFindFields = true;
-            method.instrument(this);
+        /**
+         * Finds injection of each <code>Provider.get()</code> call. A provider field is the last field accessed
+         * before the call and an instance field is the first field accessed after it.
+         *
+         * @return injection of each call (<code>null</code> if it does not inject a presenter)
+         */
+        private List<Injection> findInjections(MethodInfo methodInfo) throws BadBytecode {
+            List<Injection> injections = new ArrayList<>();
+            CodeAttribute codeAttribute = methodInfo.getCodeAttribute();
+            if (codeAttribute == null) {
+                return injections;
+            }
 
-            // got through the method and modify it
-            mFindFields = false;
-            method.instrument(this);
+            ConstPool constPool = methodInfo.getConstPool();
+            CodeIterator iterator = codeAttribute.iterator();
+            String lastField = null;
+            Injection pending = null;
+            while (iterator.hasNext()) {
+                int index = iterator.next();
+                int opcode = iterator.byteAt(index);
+                switch (opcode) {
+                    case Opcode.GETFIELD:
+                    case Opcode.PUTFIELD:
+                    case Opcode.GETSTATIC:
+                    case Opcode.PUTSTATIC: {
+                        lastField = constPool.getFieldrefName(iterator.u16bitAt(index + 1));
+                        if (pending != null) {
+                            pending.mInstanceField = lastField;
+                            if (mPresenterFieldNames.contains(lastField)) {
+                                injections.set(injections.size() - 1, pending);
+                            }
+                            pending = null;
+                        }
+                        break;
+                    }
+                    case Opcode.INVOKEVIRTUAL:
+                    case Opcode.INVOKEINTERFACE:
+                    case Opcode.INVOKESPECIAL:
+                    case Opcode.INVOKESTATIC: {
+                        int ref = iterator.u16bitAt(index + 1);
+                        boolean isInterface = constPool.getTag(ref) == ConstPool.CONST_InterfaceMethodref;
+                        String name = isInterface ? constPool.getInterfaceMethodrefName(ref) : constPool.getMethodrefName(ref);
+                        String descriptor = isInterface ? constPool.getInterfaceMethodrefType(ref) : constPool.getMethodrefType(ref);
+                        if (isProviderGet(name, descriptor)) {
+                            injections.add(null);
+                            pending = (lastField != null) ? new Injection(lastField) : null;
+                        }
+                        break;
+                    }
+                    default:
+                        break;
+                }
+            }
+            return injections;
         }
     }
 }
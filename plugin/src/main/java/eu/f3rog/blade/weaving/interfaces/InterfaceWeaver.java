@@ -1,5 +1,6 @@
 package eu.f3rog.blade.weaving.interfaces;
 
+import eu.f3rog.blade.weaving.util.WeaveReport;
 import eu.f3rog.javassist.JavassistHelper;
 import eu.f3rog.javassist.exception.AfterBurnerImpossibleException;
 import javassist.CannotCompileException;
@@ -16,9 +17,10 @@ import javassist.NotFoundException;
 abstract class InterfaceWeaver {
 
     /**
-     * Weaves given interfaceClass into targetClass.
+     * Weaves given interfaceClass into targetClass. Duration of additional steps is added to given report.
      */
-    abstract void weave(CtClass interfaceClass, CtClass targetClass, JavassistHelper javassistHelper)
+    abstract void weave(CtClass interfaceClass, CtClass targetClass, JavassistHelper javassistHelper,
+                        WeaveReport.ClassReport report)
             throws CannotCompileException, NotFoundException, AfterBurnerImpossibleException;
 
     protected boolean willBeImplementedBySuperclass(CtClass targetClass, CtClass interfaceClass) throws NotFoundException {
@@ -1,8 +1,10 @@
 package eu.f3rog.blade.weaving.interfaces;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
+import eu.f3rog.blade.weaving.util.WeaveReport;
 import eu.f3rog.javassist.JavassistHelper;
 import eu.f3rog.javassist.exception.AfterBurnerImpossibleException;
 import javassist.CannotCompileException;
@@ -16,35 +18,33 @@ import javassist.NotFoundException;
  */
 public final class Interfaces {
 
-    private Interfaces() {
+    private static final Map<String, InterfaceWeaver> sSupportedInterfaces;
+
+    static {
+        // filled before publishing, because weaving runs on more threads
+        Map<String, InterfaceWeaver> interfaces = new HashMap<>();
+        interfaces.put("eu.f3rog.blade.mvp.WeavedMvpActivity", new WeavedMvpActivityIW());
+        interfaces.put("eu.f3rog.blade.mvp.WeavedMvpFragment", new WeavedMvpFragmentIW());
+        interfaces.put("eu.f3rog.blade.mvp.WeavedMvpView", new WeavedMvpViewIW());
+        sSupportedInterfaces = Collections.unmodifiableMap(interfaces);
     }
 
-    private static Map<String, InterfaceWeaver> sSupportedInterfaces = null;
+    private Interfaces() {
+    }
 
     /**
      * Weaves given interfaceClass into targetClass.
      */
     public static void weaveInterface(CtClass interfaceClass,
                                       CtClass targetClass,
-                                      JavassistHelper javassistHelper)
+                                      JavassistHelper javassistHelper,
+                                      WeaveReport.ClassReport report)
             throws CannotCompileException, NotFoundException, AfterBurnerImpossibleException {
 
-        if (sSupportedInterfaces == null) {
-            initSupportedInterfaces();
-        }
-
         InterfaceWeaver weaver = sSupportedInterfaces.get(interfaceClass.getName());
         if (weaver == null) {
             throw new IllegalArgumentException("Interface not supported");
         }
-        weaver.weave(interfaceClass, targetClass, javassistHelper);
-    }
-
-    private static void initSupportedInterfaces() {
-        sSupportedInterfaces = new HashMap<>();
-
-        sSupportedInterfaces.put("eu.f3rog.blade.mvp.WeavedMvpActivity", new WeavedMvpActivityIW());
-        sSupportedInterfaces.put("eu.f3rog.blade.mvp.WeavedMvpFragment", new WeavedMvpFragmentIW());
-        sSupportedInterfaces.put("eu.f3rog.blade.mvp.WeavedMvpView", new WeavedMvpViewIW());
+        weaver.weave(interfaceClass, targetClass, javassistHelper, report);
     }
 }
@@ -5,6 +5,7 @@ import java.util.List;
 
 import javax.inject.Inject;
 
+import eu.f3rog.blade.weaving.util.WeaveReport;
 import eu.f3rog.javassist.JavassistHelper;
 import eu.f3rog.javassist.exception.AfterBurnerImpossibleException;
 import javassist.CannotCompileException;
@@ -27,7 +28,8 @@ abstract class WeavedMvpUiIW
     protected static final String PM = "blade.mvp.PresenterManager.getInstance()";
 
     @Override
-    public final void weave(CtClass interfaceClass, CtClass targetClass, JavassistHelper javassistHelper)
+    public final void weave(CtClass interfaceClass, CtClass targetClass, JavassistHelper javassistHelper,
+                            WeaveReport.ClassReport report)
             throws CannotCompileException, NotFoundException, AfterBurnerImpossibleException {
 
         ClassPool classPool = targetClass.getClassPool();
@@ -111,8 +113,10 @@ abstract class WeavedMvpUiIW
         List<String> presenterFieldNames = getPresenterFieldNames(targetClass);
 
         // ~> _MembersInjector
+        long start = System.nanoTime();
         DaggerMiddleMan daggerMiddleMan = new DaggerMiddleMan();
         daggerMiddleMan.weaveFor(targetClass, presenterFieldNames, PM + ".get", javassistHelper);
+        report.addStep("DaggerMiddleMan", System.nanoTime() - start);
 
         weave(targetClass, javassistHelper, presenterFieldNames);
     }
@@ -0,0 +1,453 @@
+package eu.f3rog.blade.weaving.parcel;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import eu.f3rog.blade.compiler.builder.annotation.WeaveBuilder;
+import eu.f3rog.blade.compiler.builder.annotation.WeavePlan;
+import eu.f3rog.blade.compiler.builder.helper.HelperIndex;
+import eu.f3rog.blade.compiler.module.ParcelWeaves;
+import eu.f3rog.blade.weaving.util.ClassFileHeader;
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtConstructor;
+import javassist.CtField;
+import javassist.CtMethod;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.CtPrimitiveType;
+import javassist.Modifier;
+import javassist.NotFoundException;
+import javassist.bytecode.AnnotationsAttribute;
+
+import static eu.f3rog.blade.compiler.module.ParcelWeaves.FIELD_NAME_CREATOR;
+import static eu.f3rog.blade.compiler.module.ParcelWeaves.METHOD_NAME_READ_FROM_PARCEL;
+import static eu.f3rog.blade.compiler.module.ParcelWeaves.METHOD_NAME_WRITE_TO_PARCEL;
+import static eu.f3rog.blade.weaving.util.WeavingUtil.getHelperName;
+
+/**
+ * Class {@link ParcelHelperGenerator} generates helpers of classes annotated with <code>@Parcel</code> from their
+ * bytecode, so no annotation processor is needed for them.
+ * <p>
+ * <code>@Parcel</code> and <code>@ParcelIgnore</code> are visible in bytecode only in the <code>bytecode</code> variant
+ * of the parcel module. Generated helper is the same as the one generated by <code>ParcelHelperModule</code>
+ * (fields are written and read by the same {@link android.os.Parcel} methods) and both use weaves defined by
+ * {@link ParcelWeaves}. Helper is written together with its {@link HelperIndex} entry, so it can be used like any
+ * other input.
+ *
+ * @author FrantisekGazo
+ */
+public final class ParcelHelperGenerator {
+
+    private static final String PARCEL_ANNOTATION = "blade.Parcel";
+    private static final String PARCEL_DESCRIPTOR = "Lblade/Parcel;";
+    private static final String PARCEL_IGNORE_ANNOTATION = "blade.ParcelIgnore";
+    private static final String PARCEL = "android.os.Parcel";
+    private static final String PARCELABLE = "android.os.Parcelable";
+    private static final String CREATOR = "android.os.Parcelable$Creator";
+    private static final String PARCELABLE_CONSTRUCTOR_SIGNATURE = "(Landroid/os/Parcel;)V";
+
+    private static final String OBJECT = "java.lang.Object";
+    private static final String SERIALIZABLE = "java.io.Serializable";
+    private static final String SPARSE_ARRAY = "android.util.SparseArray";
+    private static final String SPARSE_BOOLEAN_ARRAY = "android.util.SparseBooleanArray";
+
+    /**
+     * Parcel methods of types, which are written and read by methods with the same name.
+     */
+    private static final String[][] DIRECT_TYPES = {
+            {"byte", "Byte"},
+            {"int", "Int"},
+            {"long", "Long"},
+            {"double", "Double"},
+            {"float", "Float"},
+            {"java.lang.String", "String"},
+            // Bundle is not primitive but has same Parcel methods
+            {"android.os.Bundle", "Bundle"}
+    };
+    /**
+     * Parcel methods of arrays, which are written by <code>writeXArray</code> and read by <code>createXArray</code>.
+     */
+    private static final String[][] DIRECT_ARRAY_TYPES = {
+            {"byte[]", "Byte"},
+            {"boolean[]", "Boolean"},
+            {"int[]", "Int"},
+            {"long[]", "Long"},
+            {"double[]", "Double"},
+            {"float[]", "Float"},
+            {"char[]", "Char"},
+            {"java.lang.String[]", "String"},
+            {"android.os.Parcelable[]", "Parcelable"}
+    };
+
+    /**
+     * Kinds of types, which are not handled by direct Parcel methods.
+     */
+    private enum Kind {
+        SPARSE_BOOLEAN_ARRAY, TYPED_ARRAY, OBJECT_ARRAY, PARCELABLE, SERIALIZABLE, SPARSE_ARRAY, OBJECT
+    }
+
+    /**
+     * Field of the target and its access methods (if the field is not accessible).
+     */
+    private static final class ParcelField {
+
+        final CtField field;
+        final CtMethod getter;
+        final CtMethod setter;
+
+        ParcelField(CtField field, CtMethod getter, CtMethod setter) {
+            this.field = field;
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        String get(String target) {
+            return (getter == null)
+                    ? String.format("%s.%s", target, field.getName())
+                    : String.format("%s.%s()", target, getter.getName());
+        }
+
+        String set(String target, String value) {
+            return (setter == null)
+                    ? String.format("%s.%s = %s;", target, field.getName(), value)
+                    : String.format("%s.%s(%s);", target, setter.getName(), value);
+        }
+    }
+
+    /**
+     * Checks if given class may be annotated with <code>@Parcel</code>. Only constant pool of the class is read.
+     */
+    public static boolean mayHaveParcel(byte[] bytecode) {
+        return new ClassFileHeader(bytecode).containsUtf8(PARCEL_DESCRIPTOR);
+    }
+
+    /**
+     * Generates helper of given class and writes it into given directory.
+     *
+     * @return Name of generated helper or <code>null</code> if given class is not annotated with <code>@Parcel</code>
+     * or it does not have any field to parcel.
+     */
+    public String generate(CtClass targetClass, File outputDir) throws NotFoundException, CannotCompileException, IOException {
+        if (!hasAnnotation(targetClass, PARCEL_ANNOTATION)) {
+            return null;
+        }
+
+        ClassPool classPool = targetClass.getClassPool();
+        if (!targetClass.subtypeOf(classPool.get(PARCELABLE))) {
+            throw new IllegalStateException(String.format("%s: Class annotated with @Parcel has to implement Parcelable interface.",
+                    targetClass.getName()));
+        }
+        if (!hasParcelableConstructor(targetClass)) {
+            throw new IllegalStateException(String.format("%s: Class annotated with @Parcel has to have public constructor "
+                    + "with parameter of type 'android.os.Parcel' with empty body or calling 'super(parcel)' for inheritance.",
+                    targetClass.getName()));
+        }
+
+        List<ParcelField> fields = getParcelFields(targetClass);
+        if (fields.isEmpty()) {
+            return null;
+        }
+
+        String helperName = getHelperName(targetClass.getName());
+        if (classPool.find(helperName) != null) {
+            throw new IllegalStateException(String.format("%s already exists! Class %s cannot be annotated with @Parcel "
+                    + "handled by the transform and have helper generated by annotation processor.", helperName, targetClass.getName()));
+        }
+        if (new File(outputDir, helperName.replace('.', File.separatorChar) + ".class").exists()) {
+            throw new IllegalStateException(String.format("%s already exists! Class %s cannot be annotated with @Parcel "
+                    + "and have @State fields handled by the transform.", helperName, targetClass.getName()));
+        }
+
+        CtClass helperClass = classPool.makeClass(helperName);
+        helperClass.setModifiers(Modifier.ABSTRACT);
+        // like javac, the creator is an anonymous class of the helper
+        CtClass creatorClass = createCreatorClass(helperName + "$1", targetClass);
+        CtField creatorField = new CtField(classPool.get(CREATOR), FIELD_NAME_CREATOR, helperClass);
+        creatorField.setModifiers(Modifier.PUBLIC | Modifier.STATIC | Modifier.FINAL);
+        helperClass.addField(creatorField, CtField.Initializer.byNew(creatorClass));
+        helperClass.addMethod(createWriteToParcelMethod(helperClass, targetClass, fields));
+        helperClass.addMethod(createReadFromParcelMethod(helperClass, targetClass, fields));
+        creatorClass.writeFile(outputDir.getAbsolutePath());
+        creatorClass.detach();
+        helperClass.writeFile(outputDir.getAbsolutePath());
+        helperClass.detach();
+
+        WeavePlan plan = createWeavePlan(targetClass, helperName);
+        File indexFile = new File(outputDir, HelperIndex.getEntryPath(helperName).replace('/', File.separatorChar));
+        indexFile.getParentFile().mkdirs();
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(indexFile));
+        try {
+            plan.write(out);
+        } finally {
+            out.close();
+        }
+        return helperName;
+    }
+
+    private static boolean hasAnnotation(CtClass cls, String annotationName) {
+        // annotations of the bytecode variant have class retention => they are invisible at runtime
+        AnnotationsAttribute attr = (AnnotationsAttribute) cls.getClassFile2().getAttribute(AnnotationsAttribute.invisibleTag);
+        return attr != null && attr.getAnnotation(annotationName) != null;
+    }
+
+    private static boolean hasAnnotation(CtField field, String annotationName) {
+        AnnotationsAttribute attr = (AnnotationsAttribute) field.getFieldInfo2().getAttribute(AnnotationsAttribute.invisibleTag);
+        return attr != null && attr.getAnnotation(annotationName) != null;
+    }
+
+    private static boolean hasParcelableConstructor(CtClass targetClass) {
+        for (CtConstructor constructor : targetClass.getDeclaredConstructors()) {
+            if (Modifier.isPublic(constructor.getModifiers())
+                    && PARCELABLE_CONSTRUCTOR_SIGNATURE.equals(constructor.getSignature())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<ParcelField> getParcelFields(CtClass targetClass) {
+        List<ParcelField> fields = new ArrayList<>();
+        for (CtField field : targetClass.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers) || hasAnnotation(field, PARCEL_IGNORE_ANNOTATION)) {
+                continue;
+            }
+
+            if (!Modifier.isPrivate(modifiers) && !Modifier.isProtected(modifiers)) {
+                fields.add(new ParcelField(field, null, null));
+                continue;
+            }
+
+            // use setter/getter
+            String capitalizedName = Character.toUpperCase(field.getName().charAt(0)) + field.getName().substring(1);
+            String getterName = "get" + capitalizedName;
+            String setterName = "set" + capitalizedName;
+            CtMethod getter = null;
+            CtMethod setter = null;
+            for (CtMethod method : targetClass.getDeclaredMethods()) {
+                if (getterName.equals(method.getName())) {
+                    getter = method;
+                } else if (setterName.equals(method.getName())) {
+                    setter = method;
+                } else {
+                    continue;
+                }
+
+                if (getter != null && setter != null) {
+                    break;
+                }
+            }
+
+            if (getter == null || setter == null) {
+                throw new IllegalStateException(String.format("%s.%s: Field '%s' is missing %s. Class with @Parcel has to have "
+                                + "getter and setter for private and protected fields.", targetClass.getName(), field.getName(),
+                        field.getName(), (getter == null) ? "getter" : "setter"));
+            }
+            fields.add(new ParcelField(field, getter, setter));
+        }
+        return fields;
+    }
+
+    /**
+     * Creator has only erased methods of {@link android.os.Parcelable.Creator} (javac adds also bridge methods).
+     */
+    private static CtClass createCreatorClass(String creatorName, CtClass targetClass) throws NotFoundException, CannotCompileException {
+        ClassPool classPool = targetClass.getClassPool();
+        CtClass creatorClass = classPool.makeClass(creatorName);
+        creatorClass.setModifiers(Modifier.FINAL);
+        creatorClass.addInterface(classPool.get(CREATOR));
+        creatorClass.addConstructor(CtNewConstructor.defaultConstructor(creatorClass));
+        creatorClass.addMethod(CtNewMethod.make(String.format("public Object createFromParcel(%s in) { return new %s(in); }",
+                PARCEL, targetClass.getName()), creatorClass));
+        creatorClass.addMethod(CtNewMethod.make(String.format("public Object[] newArray(int size) { return new %s[size]; }",
+                targetClass.getName()), creatorClass));
+        return creatorClass;
+    }
+
+    private static CtMethod createWriteToParcelMethod(CtClass helperClass, CtClass targetClass, List<ParcelField> fields)
+            throws CannotCompileException, NotFoundException {
+        StringBuilder body = new StringBuilder();
+        body.append(String.format("public static void %s(%s target, %s parcel) {", METHOD_NAME_WRITE_TO_PARCEL, targetClass.getName(), PARCEL));
+        for (ParcelField field : fields) {
+            body.append(getWriteStatement(field, "target", "parcel"));
+        }
+        body.append("}");
+        return CtNewMethod.make(body.toString(), helperClass);
+    }
+
+    private static CtMethod createReadFromParcelMethod(CtClass helperClass, CtClass targetClass, List<ParcelField> fields)
+            throws CannotCompileException, NotFoundException {
+        StringBuilder body = new StringBuilder();
+        body.append(String.format("public static void %s(%s target, %s parcel) {", METHOD_NAME_READ_FROM_PARCEL, targetClass.getName(), PARCEL));
+        for (ParcelField field : fields) {
+            body.append(field.set("target", getReadExpression(field, "parcel")));
+        }
+        body.append("}");
+        return CtNewMethod.make(body.toString(), helperClass);
+    }
+
+    /**
+     * Returns statement which writes given field. Parcel method is chosen like by <code>Parceler</code> of the parcel
+     * compiler.
+     */
+    private static String getWriteStatement(ParcelField field, String target, String parcel) throws NotFoundException {
+        CtClass type = field.field.getType();
+        String value = field.get(target);
+        String typeName = type.getName();
+
+        for (String[] direct : DIRECT_TYPES) {
+            if (direct[0].equals(typeName)) {
+                return String.format("%s.write%s(%s);", parcel, direct[1], value);
+            }
+        }
+        if (type == CtClass.booleanType) {
+            return String.format("%s.writeByte((byte) (%s ? 1 : 0));", parcel, value);
+        }
+        for (String[] direct : DIRECT_ARRAY_TYPES) {
+            if (direct[0].equals(typeName)) {
+                return String.format("%s.write%sArray(%s);", parcel, direct[1], value);
+            }
+        }
+
+        switch (getKind(field)) {
+            case SPARSE_BOOLEAN_ARRAY:
+                return String.format("%s.writeSparseBooleanArray(%s);", parcel, value);
+            case TYPED_ARRAY:
+                return String.format("%s.writeTypedArray(%s, 0);", parcel, value);
+            case OBJECT_ARRAY:
+                return String.format("%s.writeArray(%s);", parcel, value);
+            case PARCELABLE:
+                return String.format("%s.writeParcelable(%s, 0);", parcel, value);
+            case SERIALIZABLE:
+                return String.format("%s.writeSerializable(%s);", parcel, value);
+            case SPARSE_ARRAY:
+                return String.format("%s.writeSparseArray(%s);", parcel, value);
+            default:
+                if (type.isPrimitive()) {
+                    // primitives without own method are boxed
+                    return String.format("%s.writeValue(%s.valueOf(%s));", parcel, ((CtPrimitiveType) type).getWrapperName(), value);
+                }
+                return String.format("%s.writeValue(%s);", parcel, value);
+        }
+    }
+
+    /**
+     * Returns expression which reads given field. Results of erased generic methods are cast like javac does.
+     */
+    private static String getReadExpression(ParcelField field, String parcel) throws NotFoundException {
+        CtClass type = field.field.getType();
+        String typeName = type.getName();
+
+        for (String[] direct : DIRECT_TYPES) {
+            if (direct[0].equals(typeName)) {
+                return String.format("%s.read%s()", parcel, direct[1]);
+            }
+        }
+        if (type == CtClass.booleanType) {
+            return String.format("%s.readByte() > 0", parcel);
+        }
+        for (String[] direct : DIRECT_ARRAY_TYPES) {
+            if (direct[0].equals(typeName)) {
+                return String.format("%s.create%sArray()", parcel, direct[1]);
+            }
+        }
+
+        switch (getKind(field)) {
+            case SPARSE_BOOLEAN_ARRAY:
+                return String.format("%s.readSparseBooleanArray()", parcel);
+            case TYPED_ARRAY:
+                return String.format("(%s) %s.createTypedArray(%s.%s)", typeName, parcel, getComponentType(type).getName(),
+                        FIELD_NAME_CREATOR);
+            case OBJECT_ARRAY:
+                return String.format("(%s) %s.readArray(%s)", typeName, parcel, getClassLoader(field));
+            case PARCELABLE:
+                return String.format("(%s) %s.readParcelable(%s)", typeName, parcel, getClassLoader(field));
+            case SERIALIZABLE:
+                return String.format("(%s) %s.readSerializable()", typeName, parcel);
+            case SPARSE_ARRAY:
+                return String.format("(%s) %s.readSparseArray(%s)", typeName, parcel, getClassLoader(field));
+            default:
+                if (type.isPrimitive()) {
+                    CtPrimitiveType primitiveType = (CtPrimitiveType) type;
+                    return String.format("((%s) %s.readValue(%s)).%s()", primitiveType.getWrapperName(), parcel,
+                            getClassLoader(field), primitiveType.getGetMethodName());
+                }
+                String read = String.format("%s.readValue(%s)", parcel, getClassLoader(field));
+                // javac does not cast to Object
+                return typeName.equals(OBJECT) ? read : String.format("(%s) %s", typeName, read);
+        }
+    }
+
+    private static Kind getKind(ParcelField field) throws NotFoundException {
+        CtClass type = field.field.getType();
+        if (type.isPrimitive() || isTypeVariable(field)) {
+            // primitive without own method or type variable is parceled as an object
+            return Kind.OBJECT;
+        } else if (type.getName().equals(SPARSE_BOOLEAN_ARRAY)) {
+            return Kind.SPARSE_BOOLEAN_ARRAY;
+        } else if (type.isArray()) {
+            return isSubtypeOf(getComponentType(type), PARCELABLE) ? Kind.TYPED_ARRAY : Kind.OBJECT_ARRAY;
+        } else if (isSubtypeOf(type, PARCELABLE)) {
+            return Kind.PARCELABLE;
+        } else if (isSubtypeOf(type, SERIALIZABLE)) {
+            return Kind.SERIALIZABLE;
+        } else if (isSubtypeOf(type, SPARSE_ARRAY)) {
+            return Kind.SPARSE_ARRAY;
+        } else {
+            return Kind.OBJECT;
+        }
+    }
+
+    private static boolean isSubtypeOf(CtClass type, String superTypeName) throws NotFoundException {
+        CtClass superType = type.getClassPool().getOrNull(superTypeName);
+        return superType != null && type.subtypeOf(superType);
+    }
+
+    /**
+     * Returns component type of given array (component of the innermost array for multidimensional ones).
+     */
+    private static CtClass getComponentType(CtClass type) throws NotFoundException {
+        CtClass componentType = type;
+        while (componentType.isArray()) {
+            componentType = componentType.getComponentType();
+        }
+        return componentType;
+    }
+
+    private static boolean isTypeVariable(ParcelField field) {
+        String signature = field.field.getGenericSignature();
+        return signature != null && signature.startsWith("T");
+    }
+
+    /**
+     * Returns class loader of the raw type of given field (<code>null</code> for type variables without bound).
+     */
+    private static String getClassLoader(ParcelField field) throws NotFoundException {
+        CtClass rawType = getComponentType(field.field.getType());
+        if (isTypeVariable(field) && rawType.getName().equals(OBJECT)) {
+            return "null";
+        }
+        return String.format("%s.class.getClassLoader()", rawType.getName());
+    }
+
+    private static WeavePlan createWeavePlan(CtClass targetClass, String helperName) {
+        WeavePlan.Builder plan = new WeavePlan.Builder(targetClass.getName());
+        for (WeaveBuilder.WeaveSpec weave : ParcelWeaves.weaveCreator(helperName).buildWeaves()) {
+            plan.addFieldWeave(FIELD_NAME_CREATOR, weave);
+        }
+        List<WeaveBuilder.WeaveSpec> weaves = new ArrayList<>();
+        weaves.addAll(ParcelWeaves.weaveWriteToParcel(helperName).buildWeaves());
+        weaves.addAll(ParcelWeaves.weaveReadFromParcel(helperName).buildWeaves());
+        for (WeaveBuilder.WeaveSpec weave : weaves) {
+            plan.addMethodWeave(weave);
+        }
+        return plan.build();
+    }
+}
@@ -0,0 +1,296 @@
+package eu.f3rog.blade.weaving.state;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import eu.f3rog.blade.compiler.ErrorMsg;
+import eu.f3rog.blade.compiler.builder.annotation.WeaveBuilder;
+import eu.f3rog.blade.compiler.builder.annotation.WeavePlan;
+import eu.f3rog.blade.compiler.builder.helper.HelperIndex;
+import eu.f3rog.blade.compiler.module.StateWeaves;
+import eu.f3rog.blade.compiler.module.StateWeaves.HelpedClassType;
+import eu.f3rog.blade.weaving.util.ClassFileHeader;
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtMethod;
+import javassist.CtNewMethod;
+import javassist.Modifier;
+import javassist.NotFoundException;
+import javassist.bytecode.AnnotationsAttribute;
+import javassist.bytecode.annotation.Annotation;
+import javassist.bytecode.annotation.ClassMemberValue;
+
+import static eu.f3rog.blade.compiler.module.StateWeaves.METHOD_NAME_RESTORE_SATE;
+import static eu.f3rog.blade.compiler.module.StateWeaves.METHOD_NAME_SAVE_SATE;
+import static eu.f3rog.blade.compiler.module.StateWeaves.STATEFUL_ID_FORMAT;
+import static eu.f3rog.blade.weaving.util.WeavingUtil.getHelperName;
+import static eu.f3rog.blade.weaving.util.WeavingUtil.isSubclassOf;
+
+/**
+ * Class {@link StateHelperGenerator} generates helpers of classes with <code>@State</code> fields from their bytecode,
+ * so no annotation processor is needed for them.
+ * <p>
+ * <code>@State</code> is visible in bytecode only in the <code>bytecode</code> variant of the state module.
+ * Generated helper is the same as the one generated by <code>StateHelperModule</code> and both use weaves
+ * defined by {@link StateWeaves}.
+ * Helper is written together with its {@link HelperIndex} entry, so it can be used like any other input.
+ *
+ * @author FrantisekGazo
+ */
+public final class StateHelperGenerator {
+
+    private static final String STATE_ANNOTATION = "blade.State";
+    private static final String STATE_DESCRIPTOR = "Lblade/State;";
+    private static final String DEFAULT_BUNDLER = "blade.Bundler";
+    private static final String BUNDLE = "android.os.Bundle";
+    private static final String BUNDLE_WRAPPER = "eu.f3rog.blade.core.BundleWrapper";
+    private static final String BUNDLE_WRAPPER_PUT = "put";
+    private static final String[] ACTIVITIES_AND_FRAGMENTS = {
+            "android.app.Activity",
+            "android.support.v7.app.AppCompatActivity",
+            "android.app.Fragment",
+            "android.support.v4.app.Fragment"
+    };
+    private static final String VIEW = "android.view.View";
+
+    /**
+     * Checks if given class may have <code>@State</code> fields. Only constant pool of the class is read.
+     */
+    public static boolean mayHaveState(byte[] bytecode) {
+        return new ClassFileHeader(bytecode).containsUtf8(STATE_DESCRIPTOR);
+    }
+
+    /**
+     * Generates helper of given class and writes it into given directory.
+     *
+     * @return Name of generated helper or <code>null</code> if given class does not have any <code>@State</code> field.
+     */
+    public String generate(CtClass targetClass, File outputDir) throws NotFoundException, CannotCompileException, IOException {
+        List<CtField> statefulFields = getStatefulFields(targetClass);
+        if (statefulFields.isEmpty()) {
+            return null;
+        }
+
+        HelpedClassType type = getHelpedClassType(targetClass);
+        if (type == HelpedClassType.OTHER) {
+            // helper of other classes is called from source code => it has to be generated by annotation processor
+            throw new IllegalStateException(String.format("Class %s cannot have @State fields handled by the transform. "
+                    + "Only activities, fragments, views and presenters are supported.", targetClass.getName()));
+        }
+
+        ClassPool classPool = targetClass.getClassPool();
+        String helperName = getHelperName(targetClass.getName());
+        if (classPool.find(helperName) != null) {
+            throw new IllegalStateException(String.format("%s already exists! Class %s cannot have @State fields "
+                    + "handled by the transform and helper generated by annotation processor.", helperName, targetClass.getName()));
+        }
+
+        CtClass helperClass = classPool.makeClass(helperName);
+        helperClass.setModifiers(Modifier.ABSTRACT);
+        List<CtClass> bundledTypes = getBundledTypes(targetClass, statefulFields);
+        helperClass.addMethod(createSaveStateMethod(helperClass, targetClass, statefulFields, bundledTypes));
+        helperClass.addMethod(createRestoreStateMethod(helperClass, targetClass, statefulFields, bundledTypes));
+        helperClass.writeFile(outputDir.getAbsolutePath());
+        helperClass.detach();
+
+        WeavePlan plan = createWeavePlan(targetClass, helperName, type);
+        File indexFile = new File(outputDir, HelperIndex.getEntryPath(helperName).replace('/', File.separatorChar));
+        indexFile.getParentFile().mkdirs();
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(indexFile));
+        try {
+            plan.write(out);
+        } finally {
+            out.close();
+        }
+        return helperName;
+    }
+
+    private static List<CtField> getStatefulFields(CtClass targetClass) {
+        List<CtField> fields = new ArrayList<>();
+        for (CtField field : targetClass.getDeclaredFields()) {
+            if (getStateAnnotation(field) == null) {
+                continue;
+            }
+            int modifiers = field.getModifiers();
+            if (Modifier.isPrivate(modifiers) || Modifier.isProtected(modifiers) || Modifier.isFinal(modifiers)) {
+                throw new IllegalStateException(String.format("%s.%s: %s", targetClass.getName(), field.getName(),
+                        String.format(ErrorMsg.Invalid_field_with_annotation, "State")));
+            }
+            fields.add(field);
+        }
+        return fields;
+    }
+
+    private static Annotation getStateAnnotation(CtField field) {
+        // @State of the bytecode variant has class retention => it is invisible at runtime
+        AnnotationsAttribute attr = (AnnotationsAttribute) field.getFieldInfo2().getAttribute(AnnotationsAttribute.invisibleTag);
+        return (attr != null) ? attr.getAnnotation(STATE_ANNOTATION) : null;
+    }
+
+    /**
+     * @return Name of custom bundler class or <code>null</code> if the field does not have any.
+     */
+    private static String getCustomBundler(CtField field) {
+        ClassMemberValue value = (ClassMemberValue) getStateAnnotation(field).getMemberValue("value");
+        if (value == null || DEFAULT_BUNDLER.equals(value.getValue())) {
+            return null;
+        }
+        return value.getValue();
+    }
+
+    private static HelpedClassType getHelpedClassType(CtClass targetClass) throws NotFoundException {
+        if (isSubclassOf(targetClass, ACTIVITIES_AND_FRAGMENTS)) {
+            return HelpedClassType.ACTIVITY_OR_FRAGMENT;
+        } else if (isSubclassOf(targetClass, VIEW)) {
+            return HelpedClassType.VIEW;
+        } else if (targetClass.getClassPool().getOrNull(StateWeaves.PRESENTER_CLASS_NAME) != null
+                && targetClass.subtypeOf(targetClass.getClassPool().get(StateWeaves.PRESENTER_CLASS_NAME))) {
+            return HelpedClassType.PRESENTER;
+        } else {
+            return HelpedClassType.OTHER;
+        }
+    }
+
+    /**
+     * Finds types, which are used to save given fields into <code>BundleWrapper</code>. Each of them is a parameter
+     * of the <code>BundleWrapper.put</code> method, which javac would choose for the field.
+     * <p>
+     * Generic methods of <code>BundleWrapper</code> are erased in bytecode, so fields have to be cast to these types,
+     * otherwise Javassist may choose a different method than the annotation processor. This also covers types
+     * annotated with <code>@Parcel</code>, which have to implement <code>Parcelable</code>.
+     *
+     * @return Bundled types in order of given fields (<code>null</code> for fields with custom bundler).
+     */
+    private static List<CtClass> getBundledTypes(CtClass targetClass, List<CtField> fields) throws NotFoundException {
+        List<CtClass> putTypes = new ArrayList<>();
+        for (CtMethod method : targetClass.getClassPool().get(BUNDLE_WRAPPER).getDeclaredMethods()) {
+            CtClass[] params = method.getParameterTypes();
+            if (method.getName().equals(BUNDLE_WRAPPER_PUT) && Modifier.isPublic(method.getModifiers()) && params.length == 2) {
+                putTypes.add(params[1]);
+            }
+        }
+
+        List<CtClass> bundledTypes = new ArrayList<>();
+        for (CtField field : fields) {
+            if (getCustomBundler(field) != null) {
+                bundledTypes.add(null);
+                continue;
+            }
+            CtClass fieldType = field.getType();
+            List<CtClass> applicable = new ArrayList<>();
+            for (CtClass type : putTypes) {
+                if (fieldType.subtypeOf(type)) {
+                    applicable.add(type);
+                }
+            }
+            // the most specific type is a subtype of all others
+            List<CtClass> mostSpecific = new ArrayList<>();
+            for (CtClass type : applicable) {
+                boolean isMostSpecific = true;
+                for (CtClass other : applicable) {
+                    isMostSpecific &= type.subtypeOf(other);
+                }
+                if (isMostSpecific) {
+                    mostSpecific.add(type);
+                }
+            }
+            if (mostSpecific.size() != 1) {
+                throw new IllegalStateException(String.format("%s.%s: @State field of type %s cannot be saved into Bundle, "
+                                + "because %s. Use a custom Bundler.", targetClass.getName(), field.getName(), fieldType.getName(),
+                        applicable.isEmpty() ? "it is not supported" : "it matches more types (" + getNames(applicable) + ")"));
+            }
+            bundledTypes.add(mostSpecific.get(0));
+        }
+        return bundledTypes;
+    }
+
+    private static String getNames(List<CtClass> classes) {
+        StringBuilder names = new StringBuilder();
+        for (CtClass cls : classes) {
+            if (names.length() > 0) {
+                names.append(", ");
+            }
+            names.append(cls.getName());
+        }
+        return names.toString();
+    }
+
+    private static CtMethod createSaveStateMethod(CtClass helperClass, CtClass targetClass, List<CtField> fields,
+                                                  List<CtClass> bundledTypes) throws CannotCompileException {
+        StringBuilder body = new StringBuilder();
+        body.append(String.format("public static void %s(%s target, %s state) {", METHOD_NAME_SAVE_SATE, targetClass.getName(), BUNDLE));
+        body.append("if (state == null) { throw new IllegalArgumentException(\"State cannot be null!\"); }");
+        body.append(String.format("%s bundleWrapper = %s.from(state);", BUNDLE_WRAPPER, BUNDLE_WRAPPER));
+        for (int i = 0, size = fields.size(); i < size; i++) {
+            CtField field = fields.get(i);
+            String name = field.getName();
+            String key = String.format(STATEFUL_ID_FORMAT, name);
+            String customBundler = getCustomBundler(field);
+            if (customBundler != null) {
+                body.append(String.format("%s %sBundle = new %s();", BUNDLE, name, BUNDLE));
+                body.append(String.format("%s %sBundler = new %s();", customBundler, name, customBundler));
+                body.append(String.format("%sBundler.save(target.%s, %sBundle);", name, name, name));
+                body.append(String.format("bundleWrapper.put(\"%s\", %sBundle);", key, name));
+            } else {
+                body.append(String.format("bundleWrapper.put(\"%s\", (%s) target.%s);", key, bundledTypes.get(i).getName(), name));
+            }
+        }
+        body.append("}");
+        return CtNewMethod.make(body.toString(), helperClass);
+    }
+
+    private static CtMethod createRestoreStateMethod(CtClass helperClass, CtClass targetClass, List<CtField> fields,
+                                                     List<CtClass> bundledTypes) throws CannotCompileException, NotFoundException {
+        StringBuilder body = new StringBuilder();
+        body.append(String.format("public static void %s(%s target, %s state) {", METHOD_NAME_RESTORE_SATE, targetClass.getName(), BUNDLE));
+        body.append("if (state == null) { return; }");
+        body.append(String.format("%s bundleWrapper = %s.from(state);", BUNDLE_WRAPPER, BUNDLE_WRAPPER));
+        for (int i = 0, size = fields.size(); i < size; i++) {
+            CtField field = fields.get(i);
+            String name = field.getName();
+            String key = String.format(STATEFUL_ID_FORMAT, name);
+            // generic methods are erased => result has to be cast like javac does
+            String type = field.getType().getName();
+            String customBundler = getCustomBundler(field);
+            if (customBundler != null) {
+                body.append(String.format("%s %sBundler = new %s();", customBundler, name, customBundler));
+                body.append(String.format("target.%s = (%s) %sBundler.restore(bundleWrapper.getBundle(\"%s\"));", name, type, name, key));
+            } else {
+                body.append(String.format("target.%s = (%s) bundleWrapper.get(\"%s\", (%s) target.%s);", name, type, key,
+                        bundledTypes.get(i).getName(), name));
+            }
+        }
+        body.append("}");
+        return CtNewMethod.make(body.toString(), helperClass);
+    }
+
+    private static WeavePlan createWeavePlan(CtClass targetClass, String helperName, HelpedClassType type) {
+        List<WeaveBuilder.WeaveSpec> weaves = new ArrayList<>();
+        weaves.addAll(StateWeaves.weaveSave(type, helperName,
+                hasDeclaredMethod(targetClass, StateWeaves.WEAVE_onSaveInstanceState)).buildWeaves());
+        weaves.addAll(StateWeaves.weaveRestore(type, helperName,
+                hasDeclaredMethod(targetClass, StateWeaves.WEAVE_onRestoreInstanceState)).buildWeaves());
+
+        WeavePlan.Builder plan = new WeavePlan.Builder(targetClass.getName());
+        for (WeaveBuilder.WeaveSpec weave : weaves) {
+            plan.addMethodWeave(weave);
+        }
+        return plan.build();
+    }
+
+    private static boolean hasDeclaredMethod(CtClass cls, String methodName) {
+        for (CtMethod method : cls.getDeclaredMethods()) {
+            if (method.getName().equals(methodName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,5 +1,8 @@
 package eu.f3rog.blade.weaving.util;
 
+import java.util.Collections;
+import java.util.Set;
+
 import eu.f3rog.javassist.JavassistHelper;
 
 /**
@@ -23,6 +26,11 @@ public abstract class AWeaver implements IWeaver {
         this.mJavassistHelper = new JavassistHelper();
     }
 
+    @Override
+    public Set<String> getRemovedClasses() {
+        return Collections.emptySet();
+    }
+
     protected boolean isDebug() {
         return mDebug;
     }
@@ -0,0 +1,145 @@
+package eu.f3rog.blade.weaving.util;
+
+import java.nio.charset.Charset;
+
+/**
+ * Class {@link ClassFileHeader} reads values from class file header without parsing the whole class,
+ * so no {@link javassist.CtClass} has to be created for it.
+ *
+ * @author FrantisekGazo
+ */
+public final class ClassFileHeader {
+
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int TAG_UTF8 = 1;
+    private static final int TAG_CLASS = 7;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] WOVEN_ATTRIBUTE = WeavingUtil.WOVEN_ATTRIBUTE.getBytes(UTF_8);
+
+    private final byte[] mBytecode;
+    private final int[] mConstantOffsets;
+    private final int mHeaderOffset;
+    private final boolean mWoven;
+
+    /**
+     * Constructor
+     *
+     * @param bytecode Bytecode of the class.
+     */
+    public ClassFileHeader(byte[] bytecode) {
+        if (readInt(bytecode, 0) != MAGIC) {
+            throw new IllegalArgumentException("Not a class file");
+        }
+        mBytecode = bytecode;
+        // skip magic and version
+        int offset = 8;
+        int constantCount = readShort(bytecode, offset);
+        mConstantOffsets = new int[constantCount];
+        offset += 2;
+        boolean woven = false;
+        for (int i = 1; i < constantCount; i++) {
+            mConstantOffsets[i] = offset;
+            int tag = bytecode[offset] & 0xFF;
+            offset += 1;
+            switch (tag) {
+                case TAG_UTF8:
+                    // name of an attribute is stored in constant pool
+                    woven |= equalsUtf8(bytecode, offset, WOVEN_ATTRIBUTE);
+                    offset += 2 + readShort(bytecode, offset);
+                    break;
+                case TAG_CLASS:
+                case 8: // String
+                case 16: // MethodType
+                case 19: // Module
+                case 20: // Package
+                    offset += 2;
+                    break;
+                case 15: // MethodHandle
+                    offset += 3;
+                    break;
+                case 3: // Integer
+                case 4: // Float
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 12: // NameAndType
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    offset += 4;
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    offset += 8;
+                    i++; // takes 2 entries
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown constant pool tag " + tag);
+            }
+        }
+        mHeaderOffset = offset;
+        mWoven = woven;
+    }
+
+    /**
+     * Returns <code>true</code> if class is marked as woven by Blade (see {@link WeavingUtil#markWoven}).
+     */
+    public boolean isWoven() {
+        return mWoven;
+    }
+
+    /**
+     * Returns name of the superclass or <code>null</code> for {@link Object}.
+     */
+    public String getSuperclassName() {
+        // skip access flags and this class
+        int index = readShort(mBytecode, mHeaderOffset + 4);
+        return (index != 0) ? getClassName(index) : null;
+    }
+
+    /**
+     * Checks if constant pool contains given string (e.g. descriptor of an annotation used by the class).
+     */
+    public boolean containsUtf8(String value) {
+        byte[] bytes = value.getBytes(UTF_8);
+        for (int offset : mConstantOffsets) {
+            // unused entries (after long and double) have zero offset
+            if (offset > 0 && (mBytecode[offset] & 0xFF) == TAG_UTF8 && equalsUtf8(mBytecode, offset + 1, bytes)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getInterfaceCount() {
+        // skip access flags, this class and super class
+        return readShort(mBytecode, mHeaderOffset + 6);
+    }
+
+    private String getClassName(int classIndex) {
+        int nameIndex = readShort(mBytecode, mConstantOffsets[classIndex] + 1);
+        int offset = mConstantOffsets[nameIndex];
+        int length = readShort(mBytecode, offset + 1);
+        // class names do not contain characters encoded differently in modified UTF-8
+        return new String(mBytecode, offset + 3, length, UTF_8).replace('/', '.');
+    }
+
+    private static boolean equalsUtf8(byte[] bytes, int offset, byte[] value) {
+        if (readShort(bytes, offset) != value.length) {
+            return false;
+        }
+        for (int i = 0; i < value.length; i++) {
+            if (bytes[offset + 2 + i] != value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int readShort(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (readShort(bytes, offset) << 16) | readShort(bytes, offset + 2);
+    }
+}
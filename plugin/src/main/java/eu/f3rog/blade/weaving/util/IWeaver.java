@@ -1,6 +1,7 @@
 package eu.f3rog.blade.weaving.util;
 
 import java.util.List;
+import java.util.Set;
 
 import javassist.ClassPool;
 import javassist.CtClass;
@@ -14,8 +15,15 @@ public interface IWeaver {
 
     /**
      * Modify any class as you need :)
+     *
+     * @return Classes changed by weaving. Only these have to be written.
      */
-    void weave(ClassPool classPool, List<CtClass> classes);
+    Set<CtClass> weave(ClassPool classPool, List<CtClass> classes);
+
+    /**
+     * @return Names of classes which are not needed after weaving. They must not be written.
+     */
+    Set<String> getRemovedClasses();
 
 }
 
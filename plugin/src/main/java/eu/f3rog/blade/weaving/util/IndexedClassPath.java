@@ -0,0 +1,405 @@
+package eu.f3rog.blade.weaving.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import javassist.ClassPath;
+import javassist.NotFoundException;
+
+/**
+ * Class {@link IndexedClassPath} is a {@link ClassPath} made of many directories and jars. It finds classes using an
+ * index of class names instead of searching all directories and jars one by one.
+ * <p>
+ * Class names of jars are kept in memory, so jars which did not change (e.g. libraries shared by all variants) are
+ * not read again by next transforms running in the same Gradle daemon. Directories and jars are indexed in parallel,
+ * but the index does not depend on the number of threads.
+ *
+ * @author FrantisekGazo
+ */
+public final class IndexedClassPath
+        implements ClassPath {
+
+    private static final String DOT_CLASS = ".class";
+    private static final int MAX_CACHED_JARS = 500;
+
+    private static final Map<String, JarIndex> sJarIndexes = new LinkedHashMap<String, JarIndex>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, JarIndex> eldest) {
+            return size() > MAX_CACHED_JARS;
+        }
+    };
+
+    private final Map<String, File> mLocations = new HashMap<>();
+    private final Map<File, String[]> mClassNames = new HashMap<>();
+    private final Set<File> mJars = new HashSet<>();
+    private final Map<File, JarFile> mOpenJars = new HashMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param files Directories and jars. If a class is in more of them, the first one is used.
+     */
+    public IndexedClassPath(List<File> files) throws IOException {
+        this(files, 1);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param files   Directories and jars. If a class is in more of them, the first one is used.
+     * @param threads Maximum number of threads used for indexing.
+     */
+    public IndexedClassPath(List<File> files, int threads) throws IOException {
+        List<String[]> classNames = index(files, threads);
+        for (int i = 0; i < files.size(); i++) {
+            File file = files.get(i);
+            if (classNames.get(i) == null) {
+                continue;
+            }
+            if (file.isFile()) {
+                mJars.add(file);
+            }
+            mClassNames.put(file, classNames.get(i));
+            for (String className : classNames.get(i)) {
+                addLocation(className, file);
+            }
+        }
+    }
+
+    /**
+     * Returns number of indexed classes.
+     */
+    public int size() {
+        return mLocations.size();
+    }
+
+    /**
+     * Checks if given class is indexed.
+     */
+    public boolean contains(String className) {
+        return mLocations.containsKey(className);
+    }
+
+    /**
+     * Indexes given directory again (e.g. after classes were generated into it). Classes of the directory are used
+     * only if they are not in other directories or jars, like if the directory was the last one.
+     */
+    public void reindexDirectory(File dir) throws IOException {
+        String[] previousClassNames = mClassNames.get(dir);
+        if (previousClassNames != null) {
+            for (String className : previousClassNames) {
+                if (dir.equals(mLocations.get(className))) {
+                    mLocations.remove(className);
+                }
+            }
+        }
+
+        String[] classNames = dir.isDirectory() ? indexDirectory(dir) : new String[0];
+        mClassNames.put(dir, classNames);
+        for (String className : classNames) {
+            addLocation(className, dir);
+        }
+    }
+
+    /**
+     * Returns names of all classes in given directory or jar (including classes hidden by previous directories or jars).
+     */
+    public List<String> getClassNames(File file) {
+        String[] classNames = mClassNames.get(file);
+        return (classNames != null) ? Arrays.asList(classNames) : Collections.<String>emptyList();
+    }
+
+    /**
+     * Reads bytecode of given class. Classes of jars are read using jars opened by this class path.
+     *
+     * @return bytecode or <code>null</code> if class is not indexed
+     */
+    public byte[] readBytecode(String className) throws IOException {
+        InputStream in;
+        try {
+            in = openClassfile(className);
+        } catch (NotFoundException e) {
+            throw new IOException(e);
+        }
+        if (in == null) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns size of given class file in bytes. The class file is not read.
+     *
+     * @return size or <code>-1</code> if class is not indexed
+     */
+    public long getSize(String className) throws IOException {
+        File location = mLocations.get(className);
+        if (location == null) {
+            return -1;
+        }
+        if (!mJars.contains(location)) {
+            return new File(location, getPath(className, File.separatorChar)).length();
+        }
+        JarEntry entry = getJarFile(location).getJarEntry(getPath(className, '/'));
+        return (entry != null) ? entry.getSize() : -1;
+    }
+
+    @Override
+    public InputStream openClassfile(String className) throws NotFoundException {
+        File location = mLocations.get(className);
+        if (location == null) {
+            return null;
+        }
+
+        try {
+            if (!mJars.contains(location)) {
+                return new FileInputStream(new File(location, getPath(className, File.separatorChar)));
+            }
+            JarFile jarFile = getJarFile(location);
+            JarEntry entry = jarFile.getJarEntry(getPath(className, '/'));
+            return (entry != null) ? jarFile.getInputStream(entry) : null;
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            throw new NotFoundException("broken class file of " + className, e);
+        }
+    }
+
+    @Override
+    public URL find(String className) {
+        File location = mLocations.get(className);
+        if (location == null) {
+            return null;
+        }
+
+        try {
+            if (!mJars.contains(location)) {
+                return new File(location, getPath(className, File.separatorChar)).toURI().toURL();
+            }
+            return new URL("jar:" + location.toURI().toURL() + "!/" + getPath(className, '/'));
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        for (JarFile jarFile : mOpenJars.values()) {
+            try {
+                jarFile.close();
+            } catch (IOException ignored) {
+            }
+        }
+        mOpenJars.clear();
+    }
+
+    private synchronized JarFile getJarFile(File jar) throws IOException {
+        JarFile jarFile = mOpenJars.get(jar);
+        if (jarFile == null) {
+            jarFile = new JarFile(jar);
+            mOpenJars.put(jar, jarFile);
+        }
+        return jarFile;
+    }
+
+    private void addLocation(String className, File location) {
+        if (!mLocations.containsKey(className)) {
+            mLocations.put(className, location);
+        }
+    }
+
+    /**
+     * Finds class names of each given file.
+     *
+     * @return class names in the same order as given files (<code>null</code> for missing files)
+     */
+    private static List<String[]> index(List<File> files, int threads) throws IOException {
+        List<String[]> result = new ArrayList<>(files.size());
+        if (threads <= 1 || files.size() <= 1) {
+            for (File file : files) {
+                result.add(index(file));
+            }
+            return result;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, files.size()),
+                new IndexThreadFactory());
+        try {
+            List<Future<String[]>> futures = new ArrayList<>(files.size());
+            for (final File file : files) {
+                futures.add(executor.submit(new Callable<String[]>() {
+                    @Override
+                    public String[] call() throws IOException {
+                        return index(file);
+                    }
+                }));
+            }
+
+            for (Future<String[]> future : futures) {
+                result.add(getResult(future));
+            }
+            return result;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static String[] index(File file) throws IOException {
+        if (file.isDirectory()) {
+            return indexDirectory(file);
+        } else if (file.isFile()) {
+            return getJarIndex(file).mClassNames;
+        } else {
+            return null;
+        }
+    }
+
+    private static String[] getResult(Future<String[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("indexing interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static String[] indexDirectory(File dir) throws IOException {
+        final Path root = dir.toPath();
+        final List<String> classNames = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                String path = root.relativize(file).toString();
+                if (path.endsWith(DOT_CLASS)) {
+                    classNames.add(getClassName(path, File.separatorChar));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return classNames.toArray(new String[classNames.size()]);
+    }
+
+    private static JarIndex getJarIndex(File jar) throws IOException {
+        String key = jar.getAbsolutePath();
+        synchronized (sJarIndexes) {
+            JarIndex index = sJarIndexes.get(key);
+            if (index != null && index.isValid(jar)) {
+                return index;
+            }
+        }
+
+        JarIndex index = JarIndex.create(jar);
+        synchronized (sJarIndexes) {
+            sJarIndexes.put(key, index);
+        }
+        return index;
+    }
+
+    private static String getPath(String className, char separator) {
+        return className.replace('.', separator) + DOT_CLASS;
+    }
+
+    private static String getClassName(String path, char separator) {
+        return path.substring(0, path.length() - DOT_CLASS.length()).replace(separator, '.');
+    }
+
+    /**
+     * Class names of one jar.
+     */
+    private static final class JarIndex {
+
+        private final long mLength;
+        private final long mLastModified;
+        private final String[] mClassNames;
+
+        private JarIndex(long length, long lastModified, String[] classNames) {
+            mLength = length;
+            mLastModified = lastModified;
+            mClassNames = classNames;
+        }
+
+        static JarIndex create(File jar) throws IOException {
+            long length = jar.length();
+            long lastModified = jar.lastModified();
+            List<String> classNames = new ArrayList<>();
+            JarFile jarFile = new JarFile(jar);
+            try {
+                Enumeration<JarEntry> entries = jarFile.entries();
+                while (entries.hasMoreElements()) {
+                    JarEntry entry = entries.nextElement();
+                    if (!entry.isDirectory() && entry.getName().endsWith(DOT_CLASS)) {
+                        classNames.add(getClassName(entry.getName(), '/'));
+                    }
+                }
+            } finally {
+                jarFile.close();
+            }
+            return new JarIndex(length, lastModified, classNames.toArray(new String[classNames.size()]));
+        }
+
+        boolean isValid(File jar) {
+            return jar.length() == mLength && jar.lastModified() == mLastModified;
+        }
+    }
+
+    private static final class IndexThreadFactory
+            implements ThreadFactory {
+
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "blade-indexing-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package eu.f3rog.blade.weaving.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Class {@link JarRewriter} copies a jar file and replaces or removes some of its entries.
+ * <p>
+ * Entries which are not replaced are transferred as they are (still compressed) and only replaced entries are
+ * compressed again. Jars using ZIP64 extensions are rewritten using {@link ZipOutputStream}.
+ *
+ * @author FrantisekGazo
+ */
+public final class JarRewriter {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int END_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+    private static final int METHOD_DEFLATED = 8;
+    private static final int VERSION_DEFLATED = 20;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private JarRewriter() {
+    }
+
+    /**
+     * Copies input jar to output jar and replaces content of given entries.
+     *
+     * @param input        Input jar.
+     * @param output       Output jar. It is overwritten if it exists.
+     * @param replacements Entry names mapped to their new content (<code>null</code> removes the entry).
+     *                     All of them have to exist in input jar.
+     */
+    public static void rewrite(File input, File output, Map<String, byte[]> replacements) throws IOException {
+        File parent = output.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+
+        FileChannel in = FileChannel.open(input.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer end = findEnd(in);
+            if (end == null || !rewriteRaw(in, end, output, replacements)) {
+                rewriteStream(input, output, replacements);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return <code>false</code> if jar uses ZIP64 extensions (nothing was written)
+     */
+    private static boolean rewriteRaw(FileChannel in, ByteBuffer end, File output, Map<String, byte[]> replacements) throws IOException {
+        int entryCount = end.getShort(10) & 0xFFFF;
+        long centralSize = end.getInt(12) & 0xFFFFFFFFL;
+        long centralOffset = end.getInt(16) & 0xFFFFFFFFL;
+        if (entryCount == 0xFFFF || centralSize == ZIP64_MAGIC || centralOffset == ZIP64_MAGIC) {
+            return false;
+        }
+
+        ByteBuffer central = read(in, centralOffset, (int) centralSize);
+        List<ByteBuffer> headers = new ArrayList<>(entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            if (central.getInt(central.position()) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException("Invalid central directory");
+            }
+            int size = CENTRAL_HEADER_SIZE
+                    + (central.getShort(central.position() + 28) & 0xFFFF)
+                    + (central.getShort(central.position() + 30) & 0xFFFF)
+                    + (central.getShort(central.position() + 32) & 0xFFFF);
+            ByteBuffer header = slice(central, central.position(), size);
+            if ((header.getInt(20) & 0xFFFFFFFFL) == ZIP64_MAGIC
+                    || (header.getInt(24) & 0xFFFFFFFFL) == ZIP64_MAGIC
+                    || (header.getInt(42) & 0xFFFFFFFFL) == ZIP64_MAGIC) {
+                return false;
+            }
+            headers.add(header);
+            central.position(central.position() + size);
+        }
+
+        FileChannel out = FileChannel.open(output.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            Map<String, byte[]> remaining = new HashMap<>(replacements);
+            List<ByteBuffer> keptHeaders = new ArrayList<>(headers.size());
+            for (ByteBuffer header : headers) {
+                String name = getName(header);
+                boolean replaced = remaining.containsKey(name);
+                byte[] content = remaining.remove(name);
+                if (replaced && content == null) {
+                    // removed entry
+                    continue;
+                }
+
+                long localOffset = header.getInt(42) & 0xFFFFFFFFL;
+                header.putInt(42, (int) out.position());
+                if (content == null) {
+                    copyEntry(in, localOffset, header.getInt(20) & 0xFFFFFFFFL, out);
+                } else {
+                    writeEntry(header, content, out);
+                }
+                keptHeaders.add(header);
+            }
+            if (!remaining.isEmpty()) {
+                throw new IllegalStateException("Entries not found: " + remaining.keySet());
+            }
+
+            long newCentralOffset = out.position();
+            for (ByteBuffer header : keptHeaders) {
+                header.rewind();
+                writeFully(out, header);
+            }
+            end.putShort(8, (short) keptHeaders.size());
+            end.putShort(10, (short) keptHeaders.size());
+            end.putInt(12, (int) (out.position() - newCentralOffset));
+            end.putInt(16, (int) newCentralOffset);
+            end.rewind();
+            writeFully(out, end);
+        } finally {
+            out.close();
+        }
+        return true;
+    }
+
+    private static void copyEntry(FileChannel in, long localOffset, long compressedSize, FileChannel out) throws IOException {
+        ByteBuffer localHeader = read(in, localOffset, LOCAL_HEADER_SIZE);
+        if (localHeader.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new IOException("Invalid local header");
+        }
+        long size = LOCAL_HEADER_SIZE
+                + (localHeader.getShort(26) & 0xFFFF)
+                + (localHeader.getShort(28) & 0xFFFF)
+                + compressedSize;
+        if ((localHeader.getShort(6) & FLAG_DATA_DESCRIPTOR) != 0) {
+            // descriptor may or may not start with a signature
+            size += (read(in, localOffset + size, 4).getInt(0) == DATA_DESCRIPTOR_SIGNATURE) ? 16 : 12;
+        }
+
+        long position = localOffset;
+        long remaining = size;
+        while (remaining > 0) {
+            long transferred = in.transferTo(position, remaining, out);
+            if (transferred <= 0) {
+                throw new IOException("Unexpected end of jar");
+            }
+            position += transferred;
+            remaining -= transferred;
+        }
+    }
+
+    private static void writeEntry(ByteBuffer centralHeader, byte[] content, FileChannel out) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        byte[] compressed = deflate(content);
+        byte[] name = getNameBytes(centralHeader);
+        int flags = centralHeader.getShort(8) & ~FLAG_DATA_DESCRIPTOR;
+
+        ByteBuffer localHeader = ByteBuffer.allocate(LOCAL_HEADER_SIZE + name.length).order(ByteOrder.LITTLE_ENDIAN);
+        localHeader.putInt(LOCAL_HEADER_SIGNATURE)
+                .putShort((short) VERSION_DEFLATED)
+                .putShort((short) flags)
+                .putShort((short) METHOD_DEFLATED)
+                .putShort(centralHeader.getShort(12)) // time
+                .putShort(centralHeader.getShort(14)) // date
+                .putInt((int) crc.getValue())
+                .putInt(compressed.length)
+                .putInt(content.length)
+                .putShort((short) name.length)
+                .putShort((short) 0)
+                .put(name);
+        localHeader.rewind();
+        writeFully(out, localHeader);
+        writeFully(out, ByteBuffer.wrap(compressed));
+
+        centralHeader.putShort(6, (short) Math.max(VERSION_DEFLATED, centralHeader.getShort(6)));
+        centralHeader.putShort(8, (short) flags);
+        centralHeader.putShort(10, (short) METHOD_DEFLATED);
+        centralHeader.putInt(16, (int) crc.getValue());
+        centralHeader.putInt(20, compressed.length);
+        centralHeader.putInt(24, content.length);
+    }
+
+    private static void rewriteStream(File input, File output, Map<String, byte[]> replacements) throws IOException {
+        ZipFile zipFile = new ZipFile(input);
+        try {
+            ZipOutputStream out = new ZipOutputStream(new FileOutputStream(output));
+            try {
+                byte[] buffer = new byte[8192];
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    byte[] content = replacements.get(entry.getName());
+                    if (content == null && replacements.containsKey(entry.getName())) {
+                        // removed entry
+                        continue;
+                    }
+
+                    ZipEntry newEntry = new ZipEntry(entry.getName());
+                    newEntry.setTime(entry.getTime());
+                    out.putNextEntry(newEntry);
+
+                    if (content != null) {
+                        out.write(content);
+                    } else {
+                        InputStream entryStream = zipFile.getInputStream(entry);
+                        try {
+                            int read;
+                            while ((read = entryStream.read(buffer)) != -1) {
+                                out.write(buffer, 0, read);
+                            }
+                        } finally {
+                            entryStream.close();
+                        }
+                    }
+                    out.closeEntry();
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    private static ByteBuffer findEnd(FileChannel in) throws IOException {
+        long fileSize = in.size();
+        if (fileSize < END_SIZE) {
+            return null;
+        }
+        int tailSize = (int) Math.min(fileSize, END_SIZE + MAX_COMMENT_SIZE);
+        ByteBuffer tail = read(in, fileSize - tailSize, tailSize);
+        for (int i = tailSize - END_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_SIGNATURE
+                    && i + END_SIZE + (tail.getShort(i + 20) & 0xFFFF) == tailSize) {
+                return slice(tail, i, tailSize - i);
+            }
+        }
+        return null;
+    }
+
+    private static ByteBuffer read(FileChannel in, long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of jar");
+            }
+        }
+        buffer.rewind();
+        return buffer;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int size) {
+        ByteBuffer copy = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        copy.put(buffer.array(), buffer.arrayOffset() + offset, size);
+        copy.rewind();
+        return copy;
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private static byte[] getNameBytes(ByteBuffer centralHeader) {
+        byte[] name = new byte[centralHeader.getShort(28) & 0xFFFF];
+        System.arraycopy(centralHeader.array(), centralHeader.arrayOffset() + CENTRAL_HEADER_SIZE, name, 0, name.length);
+        return name;
+    }
+
+    private static String getName(ByteBuffer centralHeader) {
+        // jar tools use UTF-8 names
+        return new String(getNameBytes(centralHeader), UTF_8);
+    }
+
+    private static byte[] deflate(byte[] content) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(content);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(content.length);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int size = deflater.deflate(buffer);
+                out.write(buffer, 0, size);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package eu.f3rog.blade.weaving.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.LoaderClassPath;
+import javassist.NotFoundException;
+import javassist.bytecode.Descriptor;
+
+/**
+ * Class {@link LibraryClassPools} keeps {@link ClassPool}s of referenced libraries, so classes of libraries used by
+ * more transforms running in the same Gradle daemon (e.g. debug, release and androidTest variants) are parsed only once.
+ * <p>
+ * Each jar has one flat shared pool, which is found by the jar (path, size and modification time) only, so variants
+ * share every jar they have in common regardless of its position in their class paths. A variant gets its own pool,
+ * which finds the shared pool owning a class through an index of class names (if a class is in more jars, the first
+ * one is used). System classes and classes of Blade plugin are used before classes of jars.
+ * <p>
+ * Weaving changes only classes of the project, which are always loaded by variant pools, so shared classes are
+ * never modified. Shared pools are counted by transforms which use them. Jars of unused pools are closed and only
+ * unused pools of jars with total size up to {@link #MAX_UNUSED_SIZE} are kept for next transforms.
+ *
+ * @author FrantisekGazo
+ */
+public final class LibraryClassPools {
+
+    /**
+     * Maximum total size of jars (in bytes), whose unused pools are kept. Parsed classes take memory proportional
+     * to the size of their jar.
+     */
+    private static final long MAX_UNUSED_SIZE = 64L * 1024L * 1024L;
+
+    // system classes and classes of Blade plugin by its class loader
+    private static final Map<ClassLoader, RootClassPool> sRoots = new WeakHashMap<>();
+    // shared pools of jars in order of their last use
+    private static final Map<String, JarClassPool> sJarPools = new LinkedHashMap<>(16, 0.75f, true);
+    // shared pools used by each variant pool
+    private static final Map<ClassPool, List<JarClassPool>> sVariantPools = new IdentityHashMap<>();
+    private static long sNextRootId = 0;
+
+    private LibraryClassPools() {
+    }
+
+    /**
+     * Returns pool of given jars. The pool contains also system classes and classes of given class loader.
+     * It must be used only as a parent of other pools and its classes must not be modified.
+     * <p>
+     * Returned pool has to be released by {@link #release(ClassPool)}, when the transform does not use it anymore.
+     *
+     * @param jars   Jars of libraries. If a class is in more of them, the first one is used.
+     * @param loader Class loader of Blade plugin.
+     */
+    public static ClassPool acquire(List<File> jars, ClassLoader loader) throws IOException {
+        synchronized (sJarPools) {
+            RootClassPool root = sRoots.get(loader);
+            if (root == null) {
+                root = new RootClassPool(sNextRootId++, loader);
+                sRoots.put(loader, root);
+            }
+
+            List<JarClassPool> jarPools = new ArrayList<>(jars.size());
+            for (File jar : jars) {
+                String key = createKey(root, jar);
+                JarClassPool jarPool = sJarPools.get(key);
+                if (jarPool == null) {
+                    jarPool = new JarClassPool(jar, root);
+                    sJarPools.put(key, jarPool);
+                }
+                jarPool.mUsers++;
+                jarPools.add(jarPool);
+            }
+            // classes referenced by shared classes are found in jars of the latest variant
+            for (int i = jarPools.size() - 1; i >= 0; i--) {
+                root.setOwner(jarPools.get(i));
+            }
+
+            VariantClassPool variantPool = new VariantClassPool(root, jarPools);
+            sVariantPools.put(variantPool, jarPools);
+            return variantPool;
+        }
+    }
+
+    /**
+     * Releases pool returned by {@link #acquire(List, ClassLoader)}. Jars of unused pools are closed and the least
+     * recently used pools are removed if their jars are too big.
+     */
+    public static void release(ClassPool classPool) {
+        synchronized (sJarPools) {
+            List<JarClassPool> jarPools = sVariantPools.remove(classPool);
+            if (jarPools == null) {
+                throw new IllegalStateException("Pool was not acquired");
+            }
+            for (JarClassPool jarPool : jarPools) {
+                jarPool.mUsers--;
+                if (jarPool.mUsers == 0) {
+                    // classes are not read anymore => jar does not have to stay open
+                    jarPool.mClassPath.close();
+                }
+            }
+            removeUnusedPools();
+        }
+    }
+
+    private static String createKey(RootClassPool root, File jar) {
+        return root.mId + "\n" + jar.getAbsolutePath()
+                + ':' + jar.length()
+                + ':' + jar.lastModified();
+    }
+
+    private static void removeUnusedPools() {
+        long unusedSize = 0;
+        for (JarClassPool jarPool : sJarPools.values()) {
+            if (jarPool.mUsers == 0) {
+                unusedSize += jarPool.mSize;
+            }
+        }
+
+        // pools are ordered from the least recently used
+        Iterator<JarClassPool> iterator = sJarPools.values().iterator();
+        while (unusedSize > MAX_UNUSED_SIZE && iterator.hasNext()) {
+            JarClassPool jarPool = iterator.next();
+            if (jarPool.mUsers == 0) {
+                iterator.remove();
+                jarPool.mRoot.removeOwner(jarPool);
+                unusedSize -= jarPool.mSize;
+            }
+        }
+    }
+
+    /**
+     * Returns name of the class, which has to be found to create given class (component type of arrays).
+     */
+    private static String getBaseName(String className) {
+        if (className.charAt(0) == '[') {
+            className = Descriptor.toClassName(className);
+        }
+        int index = className.indexOf('[');
+        return (index > 0) ? className.substring(0, index) : className;
+    }
+
+    /**
+     * Pool of system classes and classes of Blade plugin. They are used before classes of jars.
+     */
+    private static final class RootClassPool
+            extends ClassPool {
+
+        // class names are looked up here first => missing classes are remembered
+        private static final int MAX_MISSING = 200000;
+
+        private final long mId;
+        private final Set<String> mMissing = new HashSet<>();
+        // shared pools owning classes referenced by shared classes
+        private final Map<String, JarClassPool> mOwners = new HashMap<>();
+
+        private RootClassPool(long id, ClassLoader loader) {
+            super(null);
+            mId = id;
+            appendSystemPath();
+            appendClassPath(new LoaderClassPath(loader));
+        }
+
+        @Override
+        protected CtClass get0(String className, boolean useCache) throws NotFoundException {
+            CtClass cls = useCache ? getCached(className) : null;
+            if (cls != null) {
+                return cls;
+            }
+            synchronized (mMissing) {
+                if (mMissing.contains(className)) {
+                    return null;
+                }
+            }
+            cls = super.get0(className, useCache);
+            if (cls == null) {
+                synchronized (mMissing) {
+                    if (mMissing.size() >= MAX_MISSING) {
+                        mMissing.clear();
+                    }
+                    mMissing.add(className);
+                }
+            }
+            return cls;
+        }
+
+        private void setOwner(JarClassPool jarPool) {
+            synchronized (mOwners) {
+                for (String className : jarPool.mClassPath.getClassNames(jarPool.mJar)) {
+                    mOwners.put(className, jarPool);
+                }
+            }
+        }
+
+        private void removeOwner(JarClassPool jarPool) {
+            synchronized (mOwners) {
+                mOwners.values().removeAll(Collections.singleton(jarPool));
+            }
+        }
+
+        private JarClassPool getOwner(String className) {
+            synchronized (mOwners) {
+                return mOwners.get(className);
+            }
+        }
+    }
+
+    /**
+     * Shared pool of one jar. Classes of other jars, which are referenced by classes of this jar, are taken from
+     * their shared pools.
+     */
+    private static final class JarClassPool
+            extends ClassPool {
+
+        private final File mJar;
+        private final long mSize;
+        private final RootClassPool mRoot;
+        private final IndexedClassPath mClassPath;
+        // number of transforms using this pool
+        private int mUsers;
+
+        private JarClassPool(File jar, RootClassPool root) throws IOException {
+            super(null);
+            mJar = jar;
+            mSize = jar.length();
+            mRoot = root;
+            // index of the jar is shared with other class paths
+            mClassPath = new IndexedClassPath(Collections.singletonList(jar));
+            appendClassPath(mClassPath);
+        }
+
+        /**
+         * Not synchronized, so pools of other jars are never called while this pool is locked.
+         */
+        @Override
+        protected CtClass get0(String className, boolean useCache) throws NotFoundException {
+            // classes of this jar are cached only if they are not in the root pool
+            CtClass cls = useCache ? getCached(className) : null;
+            if (cls == null) {
+                cls = mRoot.getOrNull(className);
+            }
+            if (cls != null) {
+                return cls;
+            }
+            String baseName = getBaseName(className);
+            if (!mClassPath.contains(baseName)) {
+                JarClassPool owner = mRoot.getOwner(baseName);
+                return (owner != null && owner != this) ? owner.getOrNull(className) : null;
+            }
+            return super.get0(className, useCache);
+        }
+    }
+
+    /**
+     * Pool of one variant. It only finds classes in shared pools of its jars.
+     */
+    private static final class VariantClassPool
+            extends ClassPool {
+
+        private final RootClassPool mRoot;
+        private final Map<String, JarClassPool> mOwners = new HashMap<>();
+
+        private VariantClassPool(RootClassPool root, List<JarClassPool> jarPools) {
+            super(null);
+            mRoot = root;
+            for (JarClassPool jarPool : jarPools) {
+                for (String className : jarPool.mClassPath.getClassNames(jarPool.mJar)) {
+                    if (!mOwners.containsKey(className)) {
+                        mOwners.put(className, jarPool);
+                    }
+                }
+            }
+        }
+
+        @Override
+        protected CtClass get0(String className, boolean useCache) throws NotFoundException {
+            CtClass cls = mRoot.getOrNull(className);
+            if (cls != null) {
+                return cls;
+            }
+            JarClassPool owner = mOwners.get(getBaseName(className));
+            return (owner != null) ? owner.getOrNull(className) : null;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package eu.f3rog.blade.weaving.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+
+/**
+ * Class {@link ParallelWeaving} weaves groups of helpers using a bounded pool of worker threads.
+ * <p>
+ * Groups are joined into batches of limited size. {@link ClassPool} is not thread-safe and it keeps all loaded classes,
+ * so each batch is woven using its own pool and weaver, which are released right after the batch is written.
+ * Memory usage therefore depends on size of a batch and not on number of all classes. Every batch is woven into
+ * original classes, so the result does not depend on which worker got which batch.
+ *
+ * @author FrantisekGazo
+ */
+public final class ParallelWeaving {
+
+    /**
+     * Creates objects needed by a worker.
+     */
+    public interface Factory {
+
+        ClassPool createClassPool();
+
+        IWeaver createWeaver();
+    }
+
+    private final int mThreads;
+    private final int mBatchSize;
+    private final Factory mFactory;
+    private final WeaveReport mReport;
+    private final IndexedClassPath mClassPath;
+
+    /**
+     * Constructor
+     *
+     * @param threads   Maximum number of worker threads.
+     * @param batchSize Maximum number of helpers woven using one pool. Bigger group is never split.
+     * @param factory   Factory used for each batch.
+     */
+    public ParallelWeaving(int threads, int batchSize, Factory factory) {
+        this(threads, batchSize, factory, WeaveReport.DISABLED, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param threads   Maximum number of worker threads.
+     * @param batchSize Maximum number of helpers woven using one pool. Bigger group is never split.
+     * @param factory   Factory used for each batch.
+     * @param report    Report which receives duration of writing and size of each woven class.
+     * @param classPath Class path of original classes. It is used only for sizes of classes in the report.
+     */
+    public ParallelWeaving(int threads, int batchSize, Factory factory, WeaveReport report, IndexedClassPath classPath) {
+        mThreads = threads;
+        mBatchSize = batchSize;
+        mFactory = factory;
+        mReport = report;
+        mClassPath = classPath;
+    }
+
+    /**
+     * Weaves given groups of helpers. Helpers in one group are woven in given order using the same pool.
+     *
+     * @return Bytecode of woven classes sorted by class name. Bytecode of removed classes is <code>null</code>.
+     */
+    public Map<String, byte[]> weave(List<List<String>> helperGroups) throws Exception {
+        List<List<String>> batches = createBatches(helperGroups, mBatchSize);
+        if (mThreads <= 1 || batches.size() <= 1) {
+            Map<String, byte[]> result = new TreeMap<>();
+            for (List<String> batch : batches) {
+                result.putAll(weaveBatch(batch));
+            }
+            return result;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(mThreads, batches.size()),
+                new WorkerThreadFactory());
+        try {
+            List<Future<Map<String, byte[]>>> futures = new ArrayList<>(batches.size());
+            for (final List<String> batch : batches) {
+                futures.add(executor.submit(new Callable<Map<String, byte[]>>() {
+                    @Override
+                    public Map<String, byte[]> call() throws Exception {
+                        return weaveBatch(batch);
+                    }
+                }));
+            }
+
+            Map<String, byte[]> result = new TreeMap<>();
+            for (Future<Map<String, byte[]>> future : futures) {
+                result.putAll(getResult(future));
+            }
+            return result;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Map<String, byte[]> getResult(Future<Map<String, byte[]>> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static List<List<String>> createBatches(List<List<String>> helperGroups, int batchSize) {
+        List<List<String>> batches = new ArrayList<>();
+        List<String> batch = new ArrayList<>();
+        for (List<String> group : helperGroups) {
+            if (!batch.isEmpty() && batchSize > 0 && batch.size() + group.size() > batchSize) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+            }
+            batch.addAll(group);
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    private Map<String, byte[]> weaveBatch(List<String> helperNames) throws Exception {
+        ClassPool classPool = mFactory.createClassPool();
+        IWeaver weaver = mFactory.createWeaver();
+
+        List<CtClass> helpers = new ArrayList<>(helperNames.size());
+        for (String helperName : helperNames) {
+            helpers.add(classPool.get(helperName));
+        }
+
+        Set<CtClass> wovenClasses = weaver.weave(classPool, helpers);
+
+        Map<String, byte[]> result = new TreeMap<>();
+        for (CtClass cls : wovenClasses) {
+            long start = System.nanoTime();
+            byte[] bytecode = cls.toBytecode();
+            long duration = System.nanoTime() - start;
+            if (mReport.isEnabled()) {
+                mReport.forClass(cls.getName()).addWrite(duration, getOriginalSize(cls.getName()), bytecode.length);
+            }
+            result.put(cls.getName(), bytecode);
+            // written class is not needed anymore
+            cls.detach();
+        }
+        for (String className : weaver.getRemovedClasses()) {
+            result.put(className, null);
+        }
+        // pool is not referenced anymore => all its classes can be collected
+        return result;
+    }
+
+    private int getOriginalSize(String className) throws IOException {
+        // class file is not read again only to find its size
+        long size = (mClassPath != null) ? mClassPath.getSize(className) : -1;
+        return (size >= 0) ? (int) size : 0;
+    }
+
+    private static final class WorkerThreadFactory
+            implements ThreadFactory {
+
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "blade-weaving-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package eu.f3rog.blade.weaving.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Class {@link WeaveCache} stores woven classes on disk, so they can be reused by other builds.
+ * <p>
+ * Key of an entry is a hash of Blade version, referenced libraries and bytecode of all classes that are used for weaving.
+ * Entries which were not used for the longest time are removed when the cache is bigger than allowed.
+ *
+ * @author FrantisekGazo
+ */
+public final class WeaveCache {
+
+    private static final int FORMAT_VERSION = 2;
+    private static final int REMOVED_LENGTH = -1;
+    private static final String ENTRY_SUFFIX = ".woven";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File mDir;
+    private final long mMaxSize;
+    private final String mVersion;
+
+    /**
+     * Constructor
+     *
+     * @param dir     Cache directory.
+     * @param maxSize Maximum size of the cache in bytes.
+     * @param version Version of Blade. Entries of other versions are never used.
+     */
+    public WeaveCache(File dir, long maxSize, String version) {
+        mDir = dir;
+        mMaxSize = maxSize;
+        mVersion = version;
+    }
+
+    /**
+     * Returns <code>true</code> if woven result of given helper depends only on the helper and its target.
+     * Weaving of interfaces also depends on helpers of superclasses, so such helpers cannot be cached.
+     */
+    public static boolean isCacheable(byte[] helperBytecode) {
+        return new ClassFileHeader(helperBytecode).getInterfaceCount() == 0;
+    }
+
+    /**
+     * Creates key of given libraries. Weaving resolves also classes of libraries (e.g. superclasses of targets),
+     * so results woven with other libraries are not used. Jars are identified by their paths, sizes and modification
+     * times, so they are not read.
+     *
+     * @param jars Jars of referenced libraries.
+     */
+    public static String createLibrariesKey(List<File> jars) {
+        MessageDigest digest = createDigest();
+        for (File jar : jars) {
+            digest.update(jar.getAbsolutePath().getBytes(UTF_8));
+            digest.update((byte) 0);
+            digest.update(Long.toString(jar.length()).getBytes(UTF_8));
+            digest.update((byte) 0);
+            digest.update(Long.toString(jar.lastModified()).getBytes(UTF_8));
+            digest.update((byte) 0);
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Creates key from all classes used for weaving.
+     *
+     * @param classes      Class names mapped to their bytecode. Bytecode is <code>null</code> for missing classes.
+     * @param librariesKey Key of referenced libraries (see {@link #createLibrariesKey(List)}).
+     */
+    public String createKey(Map<String, byte[]> classes, String librariesKey) {
+        MessageDigest digest = createDigest();
+        digest.update(mVersion.getBytes(UTF_8));
+        digest.update((byte) 0);
+        digest.update(librariesKey.getBytes(UTF_8));
+        for (Map.Entry<String, byte[]> entry : new TreeMap<>(classes).entrySet()) {
+            digest.update((byte) 0);
+            digest.update(entry.getKey().getBytes(UTF_8));
+            if (entry.getValue() != null) {
+                digest.update((byte) 1);
+                digest.update(Integer.toString(entry.getValue().length).getBytes(UTF_8));
+                digest.update(entry.getValue());
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Returns woven classes stored for given key.
+     *
+     * @return Class names mapped to their bytecode (<code>null</code> for removed classes) or <code>null</code>
+     * if there is no valid entry.
+     */
+    public Map<String, byte[]> get(String key) {
+        File file = getFile(key);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != FORMAT_VERSION) {
+                    return null;
+                }
+                int count = in.readInt();
+                Map<String, byte[]> classes = new TreeMap<>();
+                for (int i = 0; i < count; i++) {
+                    String className = in.readUTF();
+                    int length = in.readInt();
+                    byte[] bytecode = null;
+                    if (length != REMOVED_LENGTH) {
+                        bytecode = new byte[length];
+                        in.readFully(bytecode);
+                    }
+                    classes.put(className, bytecode);
+                }
+                // mark as recently used
+                file.setLastModified(System.currentTimeMillis());
+                return classes;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // broken entry is ignored and replaced later
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Stores woven classes for given key.
+     *
+     * @param classes Class names mapped to their bytecode. Bytecode is <code>null</code> for removed classes.
+     */
+    public void put(String key, Map<String, byte[]> classes) throws IOException {
+        mDir.mkdirs();
+        // other builds may use the same cache => write whole entry at once
+        File tmpFile = File.createTempFile(key, ".tmp", mDir);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            try {
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(classes.size());
+                for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    if (entry.getValue() != null) {
+                        out.writeInt(entry.getValue().length);
+                        out.write(entry.getValue());
+                    } else {
+                        out.writeInt(REMOVED_LENGTH);
+                    }
+                }
+            } finally {
+                out.close();
+            }
+            Files.move(tmpFile.toPath(), getFile(key).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * Removes least recently used entries until the cache fits into its maximum size.
+     */
+    public void trim() {
+        File[] files = mDir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        List<File> entries = new ArrayList<>(files.length);
+        long size = 0;
+        for (File file : files) {
+            if (file.getName().endsWith(ENTRY_SUFFIX)) {
+                entries.add(file);
+                size += file.length();
+            }
+        }
+        if (size <= mMaxSize) {
+            return;
+        }
+
+        final Map<File, Long> lastUsed = new TreeMap<>();
+        for (File file : entries) {
+            lastUsed.put(file, file.lastModified());
+        }
+        Collections.sort(entries, new Comparator<File>() {
+            @Override
+            public int compare(File l, File r) {
+                return lastUsed.get(l).compareTo(lastUsed.get(r));
+            }
+        });
+        for (File file : entries) {
+            if (size <= mMaxSize) {
+                break;
+            }
+            long fileSize = file.length();
+            if (file.delete()) {
+                size -= fileSize;
+            }
+        }
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] hash) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : hash) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private File getFile(String key) {
+        return new File(mDir, key + ENTRY_SUFFIX);
+    }
+}
@@ -0,0 +1,276 @@
+package eu.f3rog.blade.weaving.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Class {@link WeaveReport} collects duration of all weaving steps of each class and writes them as a report.
+ * <p>
+ * Disabled report ({@link #DISABLED}) ignores everything, so weaving code does not have to check if it is enabled.
+ * Report can be filled from more threads, but each class should be woven by one thread only.
+ *
+ * @author FrantisekGazo
+ */
+public class WeaveReport {
+
+    /**
+     * Report which ignores all values.
+     */
+    public static final WeaveReport DISABLED = new WeaveReport(false);
+
+    private static final String JSON_FILE_EXTENSION = ".json";
+    private static final String TEXT_FILE_EXTENSION = ".txt";
+
+    private final boolean mEnabled;
+    private final ConcurrentMap<String, ClassReport> mClasses = new ConcurrentHashMap<>();
+    private final Map<String, Long> mPhases = new LinkedHashMap<>();
+
+    public WeaveReport() {
+        this(true);
+    }
+
+    private WeaveReport(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Returns report of given class. It is created if it does not exist yet.
+     */
+    public ClassReport forClass(String className) {
+        if (!mEnabled) {
+            return ClassReport.DISABLED;
+        }
+
+        ClassReport report = mClasses.get(className);
+        if (report == null) {
+            ClassReport newReport = new ClassReport(className);
+            report = mClasses.putIfAbsent(className, newReport);
+            if (report == null) {
+                report = newReport;
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Adds duration of a phase of the whole transform.
+     */
+    public synchronized void addPhase(String name, long nanos) {
+        if (mEnabled) {
+            Long previous = mPhases.get(name);
+            mPhases.put(name, (previous != null) ? previous + nanos : nanos);
+        }
+    }
+
+    /**
+     * Writes report as JSON (<code>name.json</code>) and as a readable summary (<code>name.txt</code>).
+     */
+    public synchronized void write(File dir, String name) throws IOException {
+        if (!mEnabled) {
+            return;
+        }
+        dir.mkdirs();
+
+        List<ClassReport> classes = new ArrayList<>(mClasses.values());
+        // the slowest first
+        Collections.sort(classes, new Comparator<ClassReport>() {
+            @Override
+            public int compare(ClassReport l, ClassReport r) {
+                int result = Long.valueOf(r.getTotalNanos()).compareTo(l.getTotalNanos());
+                return (result != 0) ? result : l.mName.compareTo(r.mName);
+            }
+        });
+
+        PrintWriter json = createWriter(new File(dir, name + JSON_FILE_EXTENSION));
+        try {
+            writeJson(json, name, classes);
+        } finally {
+            json.close();
+        }
+
+        PrintWriter text = createWriter(new File(dir, name + TEXT_FILE_EXTENSION));
+        try {
+            writeText(text, name, classes);
+        } finally {
+            text.close();
+        }
+    }
+
+    private void writeJson(PrintWriter out, String name, List<ClassReport> classes) {
+        out.println("{");
+        out.printf(Locale.US, "  \"transform\": %s,%n", quote(name));
+        out.println("  \"phases\": {");
+        writeJsonDurations(out, mPhases, "    ");
+        out.println("  },");
+        out.println("  \"classes\": [");
+        for (int i = 0; i < classes.size(); i++) {
+            ClassReport c = classes.get(i);
+            synchronized (c) {
+                out.println("    {");
+                out.printf(Locale.US, "      \"name\": %s,%n", quote(c.mName));
+                out.printf(Locale.US, "      \"cached\": %b,%n", c.mCached);
+                out.printf(Locale.US, "      \"totalMs\": %.3f,%n", toMillis(c.getTotalNanos()));
+                out.printf(Locale.US, "      \"loadMs\": %.3f,%n", toMillis(c.mLoadNanos));
+                out.println("      \"steps\": {");
+                writeJsonDurations(out, c.mSteps, "        ");
+                out.println("      },");
+                out.printf(Locale.US, "      \"writeMs\": %.3f,%n", toMillis(c.mWriteNanos));
+                out.printf(Locale.US, "      \"originalSize\": %d,%n", c.mOriginalSize);
+                out.printf(Locale.US, "      \"wovenSize\": %d%n", c.mWovenSize);
+                out.println((i < classes.size() - 1) ? "    }," : "    }");
+            }
+        }
+        out.println("  ]");
+        out.println("}");
+    }
+
+    private static void writeJsonDurations(PrintWriter out, Map<String, Long> durations, String indent) {
+        int i = 0;
+        for (Map.Entry<String, Long> entry : durations.entrySet()) {
+            out.printf(Locale.US, "%s%s: %.3f%s%n", indent, quote(entry.getKey()), toMillis(entry.getValue()),
+                    (++i < durations.size()) ? "," : "");
+        }
+    }
+
+    private void writeText(PrintWriter out, String name, List<ClassReport> classes) {
+        out.printf("Blade weaving report of %s%n%n", name);
+        for (Map.Entry<String, Long> phase : mPhases.entrySet()) {
+            out.printf(Locale.US, "%-24s %10.1f ms%n", phase.getKey(), toMillis(phase.getValue()));
+        }
+
+        out.printf(Locale.US, "%n%10s %10s %10s %10s %10s  %s%n", "total ms", "load ms", "weave ms", "write ms", "size +B", "class");
+        for (ClassReport c : classes) {
+            synchronized (c) {
+                out.printf(Locale.US, "%10.1f %10.1f %10.1f %10.1f %10s  %s%s%n",
+                        toMillis(c.getTotalNanos()), toMillis(c.mLoadNanos), toMillis(c.mWeaveNanos), toMillis(c.mWriteNanos),
+                        (c.mWovenSize > 0) ? Integer.toString(c.mWovenSize - c.mOriginalSize) : "-",
+                        c.mName, c.mCached ? " (cached)" : "");
+                for (Map.Entry<String, Long> step : c.mSteps.entrySet()) {
+                    out.printf(Locale.US, "%21s %10.1f             %s%n", "", toMillis(step.getValue()), step.getKey());
+                }
+            }
+        }
+    }
+
+    private static PrintWriter createWriter(File file) throws IOException {
+        return new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1000000.0;
+    }
+
+    private static String quote(String value) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * Durations and sizes of one class.
+     */
+    public static class ClassReport {
+
+        static final ClassReport DISABLED = new ClassReport(null) {
+            @Override
+            public void addStep(String name, long nanos) {
+            }
+
+            @Override
+            public void addLoad(long nanos) {
+            }
+
+            @Override
+            public void addWeave(long nanos) {
+            }
+
+            @Override
+            public void addWrite(long nanos, int originalSize, int wovenSize) {
+            }
+
+            @Override
+            public void setCached() {
+            }
+        };
+
+        private final String mName;
+        private final Map<String, Long> mSteps = new LinkedHashMap<>();
+        private long mLoadNanos;
+        private long mWeaveNanos;
+        private long mWriteNanos;
+        private int mOriginalSize;
+        private int mWovenSize;
+        private boolean mCached;
+
+        private ClassReport(String name) {
+            mName = name;
+        }
+
+        /**
+         * Adds duration of one weaving step. Steps can be nested, so they are not summed up.
+         */
+        public synchronized void addStep(String name, long nanos) {
+            Long previous = mSteps.get(name);
+            mSteps.put(name, (previous != null) ? previous + nanos : nanos);
+        }
+
+        /**
+         * Adds duration of loading the class into class pool.
+         */
+        public synchronized void addLoad(long nanos) {
+            mLoadNanos += nanos;
+        }
+
+        /**
+         * Adds duration of all weaving steps.
+         */
+        public synchronized void addWeave(long nanos) {
+            mWeaveNanos += nanos;
+        }
+
+        /**
+         * Adds duration of creating the bytecode and sizes of the class before and after weaving.
+         */
+        public synchronized void addWrite(long nanos, int originalSize, int wovenSize) {
+            mWriteNanos += nanos;
+            mOriginalSize = originalSize;
+            mWovenSize = wovenSize;
+        }
+
+        /**
+         * Marks class as taken from cache of woven classes.
+         */
+        public synchronized void setCached() {
+            mCached = true;
+        }
+
+        synchronized long getTotalNanos() {
+            return mLoadNanos + mWeaveNanos + mWriteNanos;
+        }
+    }
+}
@@ -5,6 +5,8 @@ import javassist.CtField;
 import javassist.CtMethod;
 import javassist.NotFoundException;
 import javassist.bytecode.AnnotationsAttribute;
+import javassist.bytecode.AttributeInfo;
+import javassist.bytecode.ClassFile;
 
 /**
  * Class {@link WeavingUtil}
@@ -14,6 +16,33 @@ import javassist.bytecode.AnnotationsAttribute;
  */
 public final class WeavingUtil {
 
+    /**
+     * Name of class attribute which marks classes woven by Blade. It is ignored by the JVM.
+     */
+    public static final String WOVEN_ATTRIBUTE = "eu.f3rog.blade.Woven";
+
+    public static boolean isWoven(CtClass cls) {
+        return cls.getClassFile2().getAttribute(WOVEN_ATTRIBUTE) != null;
+    }
+
+    /**
+     * Marks given class as woven, so it is not woven again (e.g. classes of a library woven before packaging).
+     */
+    public static void markWoven(CtClass cls) {
+        ClassFile classFile = cls.getClassFile();
+        if (classFile.getAttribute(WOVEN_ATTRIBUTE) == null) {
+            classFile.addAttribute(new AttributeInfo(classFile.getConstPool(), WOVEN_ATTRIBUTE, new byte[0]));
+        }
+    }
+
+    /**
+     * Returns name of helper, which is generated for given class by Blade plugin.
+     */
+    public static String getHelperName(String targetName) {
+        // nested classes have a top level helper (e.g. a.b.Outer_Inner_Helper)
+        return targetName.replace('$', '_') + "_Helper";
+    }
+
     public static boolean isSubclassOf(CtClass clazz, String superClassName) throws NotFoundException {
         CtClass superClass = clazz;
 
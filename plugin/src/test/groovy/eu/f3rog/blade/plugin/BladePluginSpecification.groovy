@@ -3,6 +3,7 @@ package eu.f3rog.blade.plugin
 import eu.f3rog.ptu.BladeTempFileBuilder
 import eu.f3rog.ptu.GradleConfig
 import eu.f3rog.ptu.TempProjectFolder
+import eu.f3rog.ptu.WovenActivityTempFileBuilder
 import org.gradle.testkit.runner.BuildResult
 import org.gradle.testkit.runner.GradleRunner
 import org.junit.Rule
@@ -216,6 +217,61 @@ final class BladePluginSpecification
         [gradleToolsVersion, gradleVersion, aptClasspath, apt, bladeFileType] << WHERE_DATA
     }
 
+    @Unroll
+    def "fail if non-existing weaving engine used - for #gradleToolsVersion, #bladeFileType"() {
+        given:
+        projectFolder.addBladeFile(bladeFileType, ["arg"], "fake")
+        projectFolder.addGradleFile(new GradleConfig()
+                .classpaths([buildGradleClasspath(gradleToolsVersion)] + aptClasspath + [bladeClasspath])
+                .plugins(["com.android.application"] + apt + ["blade"])
+        )
+
+        when:
+        Exception e = null
+        try {
+            GradleRunner.create()
+                    .withGradleVersion(gradleVersion)
+                    .withProjectDir(projectFolder.root)
+                    .withArguments(':build')
+                    .build()
+        } catch (Exception ex) {
+            e = ex
+        }
+
+        then:
+        e != null
+        e.getMessage().contains(String.format(BladePlugin.ERROR_ENGINE_DOES_NOT_EXIST, "fake"))
+
+        where:
+        [gradleToolsVersion, gradleVersion, aptClasspath, apt, bladeFileType] << WHERE_DATA
+    }
+
+    @Unroll
+    def "build successfully woven activity with #engine engine - for #gradleToolsVersion, #bladeFileType"() {
+        given:
+        projectFolder.addBladeFile(bladeFileType, ["extra", "state"], engine)
+        projectFolder.addGradleFile(new GradleConfig()
+                .classpaths([buildGradleClasspath(gradleToolsVersion)] + aptClasspath + [bladeClasspath])
+                .plugins(["com.android.application"] + apt + ["blade"])
+        )
+        projectFolder.addFile(new WovenActivityTempFileBuilder())
+
+        when:
+        BuildResult result = GradleRunner.create()
+                .withGradleVersion(gradleVersion)
+                .withProjectDir(projectFolder.root)
+                .withArguments(':build')
+                .build()
+
+        then:
+        result.task(":build").outcome == SUCCESS
+        result.task(":transformClassesWithBladeForDebug").outcome == SUCCESS
+        result.task(":transformClassesWithBladeForRelease").outcome == SUCCESS
+
+        where:
+        [[gradleToolsVersion, gradleVersion, aptClasspath, apt, bladeFileType], engine] << [WHERE_DATA, ["source", "bytecode"]].combinations()
+    }
+
     @Unroll
     def "build successfully [mvp] module - for #gradleToolsVersion, #bladeFileType"() {
         given:
@@ -0,0 +1,97 @@
+package eu.f3rog.blade.plugin
+
+import com.android.build.api.transform.DirectoryInput
+import com.android.build.api.transform.Status
+import com.android.build.api.transform.TransformInput
+import javassist.ClassPool
+import javassist.CtClass
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+import spock.lang.Unroll
+
+
+final class IncrementalTransformSpecification
+        extends Specification {
+
+    private static final String HELPER_NAME = "com.example.Act_Helper"
+
+    @Rule
+    final TemporaryFolder folder = new TemporaryFolder()
+
+    private File inputDir
+    private File outputDir
+
+    def setup() {
+        inputDir = folder.newFolder("input")
+        outputDir = folder.newFolder("output")
+    }
+
+    @Unroll
+    def "changed helper - previous interfaces #previousInterfaces, current interfaces #currentInterfaces"() {
+        given:
+        File helper = writeHelper(inputDir, currentInterfaces)
+        if (previousInterfaces != null) {
+            writeHelper(outputDir, previousInterfaces)
+        }
+
+        expect:
+        BaseTransformer.canTransformIncrementally(createInputs(helper, Status.CHANGED), outputDir) == incremental
+
+        where:
+        previousInterfaces           | currentInterfaces            | incremental
+        []                           | []                           | true
+        null                         | []                           | true
+        []                           | ["java.io.Serializable"]     | false
+        ["java.io.Serializable"]     | ["java.io.Serializable"]     | false
+        ["java.io.Serializable"]     | []                           | false
+    }
+
+    def "added helper with interface"() {
+        given:
+        File helper = writeHelper(inputDir, ["java.io.Serializable"])
+
+        expect:
+        !BaseTransformer.canTransformIncrementally(createInputs(helper, Status.ADDED), outputDir)
+    }
+
+    def "removed helper"() {
+        given:
+        File helper = new File(inputDir, HELPER_NAME.replace('.' as char, File.separatorChar) + ".class")
+        writeHelper(outputDir, [])
+
+        expect:
+        !BaseTransformer.canTransformIncrementally(createInputs(helper, Status.REMOVED), outputDir)
+    }
+
+    def "unchanged helper"() {
+        given:
+        File helper = writeHelper(inputDir, ["java.io.Serializable"])
+        writeHelper(outputDir, ["java.io.Serializable"])
+
+        expect:
+        BaseTransformer.canTransformIncrementally(createInputs(helper, Status.NOTCHANGED), outputDir)
+    }
+
+    private static File writeHelper(File dir, List<String> interfaces) {
+        ClassPool classPool = new ClassPool(true)
+        CtClass helper = classPool.makeClass(HELPER_NAME)
+        for (String interfaceName : interfaces) {
+            helper.addInterface(classPool.get(interfaceName))
+        }
+        helper.writeFile(dir.absolutePath)
+        return new File(dir, HELPER_NAME.replace('.' as char, File.separatorChar) + ".class")
+    }
+
+    private Collection<TransformInput> createInputs(File helper, Status status) {
+        DirectoryInput dirInput = [
+                getFile        : { inputDir },
+                getChangedFiles: { Collections.singletonMap(helper, status) }
+        ] as DirectoryInput
+        TransformInput input = [
+                getDirectoryInputs: { Collections.singletonList(dirInput) },
+                getJarInputs      : { Collections.emptyList() }
+        ] as TransformInput
+        return Collections.singletonList(input)
+    }
+}
@@ -0,0 +1,345 @@
+package eu.f3rog.blade.weaving
+
+import eu.f3rog.blade.compiler.builder.annotation.WeaveBuilder
+import eu.f3rog.blade.compiler.builder.annotation.WeavePlan
+import javassist.ClassPool
+import javassist.CtClass
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import javax.tools.JavaCompiler
+import javax.tools.StandardJavaFileManager
+import javax.tools.ToolProvider
+
+
+final class DirectCallWeaverSpecification
+        extends Specification {
+
+    private static final String TARGET = "com.example.Target"
+    private static final String HELPER = "com.example.Target_Helper"
+
+    private static final Map<String, String> SOURCES = [
+            (TARGET): '''
+                    package com.example;
+
+                    import java.util.ArrayList;
+                    import java.util.List;
+
+                    public class Target {
+                        public final List<String> calls = new ArrayList<String>();
+
+                        public int sign(int value) {
+                            if (value > 0) {
+                                return 1;
+                            }
+                            if (value < 0) {
+                                return -1;
+                            }
+                            return 0;
+                        }
+
+                        public long wide(long first, double second, String third) {
+                            calls.add("body " + third);
+                            return first + (long) second;
+                        }
+
+                        public static double staticWide(double first, long second) {
+                            return first + second;
+                        }
+
+                        public void typed(Object value) {
+                            calls.add("body");
+                        }
+
+                        public void overloaded(String value) {
+                            calls.add("body");
+                        }
+
+                        public void loop(int count) {
+                            do {
+                                calls.add("body");
+                            } while (--count > 0);
+                        }
+                    }
+                    ''',
+            (HELPER): '''
+                    package com.example;
+
+                    public class Target_Helper {
+                        public static final java.util.List<String> STATIC_CALLS = new java.util.ArrayList<String>();
+
+                        public static void sign(Target target, int value) {
+                            target.calls.add("sign " + value);
+                        }
+
+                        public static void wide(Target target, long first, double second, String third) {
+                            target.calls.add("wide " + first + " " + second + " " + third);
+                        }
+
+                        public static long wideResult(Target target) {
+                            target.calls.add("wide result");
+                            return Long.MAX_VALUE;
+                        }
+
+                        public static void staticWide(double first, long second) {
+                            STATIC_CALLS.add("static wide " + first + " " + second);
+                        }
+
+                        public static void typed(Target target, String value) {
+                            target.calls.add("typed " + value);
+                        }
+
+                        public static void overloaded(Target target, Object value) {
+                            target.calls.add("overloaded object");
+                        }
+
+                        public static void overloaded(Target target, String value) {
+                            target.calls.add("overloaded string");
+                        }
+
+                        public static int loop(Target target, int count) {
+                            target.calls.add("loop " + count);
+                            return count;
+                        }
+                    }
+                    '''
+    ]
+
+    @Rule
+    final TemporaryFolder folder = new TemporaryFolder()
+
+    private File classDir
+    private ClassPool classPool
+
+    def setup() {
+        classDir = compile(SOURCES)
+        classPool = createClassPool()
+    }
+
+    def "call after body is woven before each return"() {
+        when:
+        boolean woven = weaveDirectly("com.example.Target_Helper.sign(this, \$1);", "sign",
+                [CtClass.intType], WeaveBuilder.MethodWeaveType.AFTER_BODY)
+        def target = load(classPool).loadClass(TARGET).newInstance()
+
+        then:
+        woven
+        target.sign(5) == 1
+        target.sign(-5) == -1
+        target.sign(0) == 0
+        target.calls == ["sign 5", "sign -5", "sign 0"]
+    }
+
+    def "wide parameters are loaded from correct local variables"() {
+        given:
+        CtClass[] args = [CtClass.longType, CtClass.doubleType, classPool.get("java.lang.String")]
+
+        when:
+        boolean wovenBefore = weaveDirectly("com.example.Target_Helper.wide(this, \$1, \$2, \$3);", "wide",
+                args as List, WeaveBuilder.MethodWeaveType.BEFORE_BODY)
+        boolean wovenAfter = weaveDirectly("com.example.Target_Helper.wideResult(this);", "wide",
+                args as List, WeaveBuilder.MethodWeaveType.AFTER_BODY)
+        boolean wovenStatic = weaveDirectly("com.example.Target_Helper.staticWide(\$1, \$2);", "staticWide",
+                [CtClass.doubleType, CtClass.longType], WeaveBuilder.MethodWeaveType.BEFORE_BODY)
+        ClassLoader loader = load(classPool)
+        def target = loader.loadClass(TARGET).newInstance()
+
+        then:
+        wovenBefore
+        wovenAfter
+        wovenStatic
+        target.wide(1L, 2.5d, "x") == 3L
+        target.calls == ["wide 1 2.5 x", "body x", "wide result"]
+        loader.loadClass(TARGET).staticWide(1.5d, 2L) == 3.5d
+        loader.loadClass(HELPER).STATIC_CALLS == ["static wide 1.5 2"]
+    }
+
+    def "argument is cast to type of helper parameter"() {
+        when:
+        boolean woven = weaveDirectly("com.example.Target_Helper.typed(this, (java.lang.String) \$1);", "typed",
+                [classPool.get("java.lang.Object")], WeaveBuilder.MethodWeaveType.BEFORE_BODY)
+        def target = load(classPool).loadClass(TARGET).newInstance()
+        target.typed("value")
+
+        then:
+        woven
+        target.calls == ["typed value", "body"]
+
+        when:
+        target.typed(1)
+
+        then:
+        thrown(ClassCastException)
+    }
+
+    def "call before body is not repeated by loop"() {
+        when:
+        boolean woven = weaveDirectly("com.example.Target_Helper.loop(this, \$1);", "loop",
+                [CtClass.intType], WeaveBuilder.MethodWeaveType.BEFORE_BODY)
+        def target = load(classPool).loadClass(TARGET).newInstance()
+        target.loop(3)
+
+        then:
+        woven
+        target.calls == ["loop 3", "body", "body", "body"]
+    }
+
+    @Unroll
+    def "unsupported statement is left for compiler - #description"() {
+        given:
+        byte[] original = classPool.get(TARGET).toBytecode()
+        classPool.get(TARGET).defrost()
+
+        expect:
+        !weaveDirectly(statement, methodName, args.collect { classPool.get(it) }, type)
+        classPool.get(TARGET).toBytecode() == original
+
+        where:
+        description          | statement                                                       | methodName   | args                 | type
+        "ambiguous overload" | "com.example.Target_Helper.overloaded(this, \$1);"              | "overloaded" | ["java.lang.String"] | WeaveBuilder.MethodWeaveType.BEFORE_BODY
+        "not assignable"     | "com.example.Target_Helper.typed(this, \$1);"                   | "typed"      | ["java.lang.Object"] | WeaveBuilder.MethodWeaveType.BEFORE_BODY
+        "cast of primitive"  | "com.example.Target_Helper.sign(this, (java.lang.Integer) \$1);" | "sign"       | ["int"]              | WeaveBuilder.MethodWeaveType.BEFORE_BODY
+        "missing parameter"  | "com.example.Target_Helper.sign(this, \$2);"                    | "sign"       | ["int"]              | WeaveBuilder.MethodWeaveType.AFTER_BODY
+        "this in static"     | "com.example.Target_Helper.wideResult(this);"                   | "staticWide" | ["double", "long"]   | WeaveBuilder.MethodWeaveType.BEFORE_BODY
+        "not a call"         | "if (\$1 > 0) { return; }"                                      | "sign"       | ["int"]              | WeaveBuilder.MethodWeaveType.BEFORE_BODY
+        "after super"        | "com.example.Target_Helper.sign(this, \$1);"                    | "sign"       | ["int"]              | WeaveBuilder.MethodWeaveType.AFTER_SUPER
+    }
+
+    def "both engines weave helper with the same behaviour"() {
+        when:
+        Map<String, Object> source = runWoven(BladeWeaver.Engine.SOURCE)
+        Map<String, Object> bytecode = runWoven(BladeWeaver.Engine.BYTECODE)
+
+        then:
+        bytecode == source
+        source.calls == ["sign 5", "sign -5", "sign 0",
+                         "wide 1 2.5 x", "body x", "wide result",
+                         "typed value", "body",
+                         "overloaded string", "body",
+                         "loop 2", "body", "body",
+                         "ClassCastException"]
+        source.staticCalls == ["static wide 1.5 2"]
+    }
+
+    private boolean weaveDirectly(String statement, String methodName, List<CtClass> args,
+                                  WeaveBuilder.MethodWeaveType type) {
+        return new DirectCallWeaver().weave(statement, classPool.get(TARGET), methodName, args as CtClass[], type)
+    }
+
+    /**
+     * Weaves the helper by given engine and runs all woven methods.
+     *
+     * @return calls recorded by the helper and results of woven methods
+     */
+    private Map<String, Object> runWoven(BladeWeaver.Engine engine) {
+        WeavePlan.Builder plan = new WeavePlan.Builder(TARGET)
+        List<WeaveBuilder.IWeaveBuild> weaves = [
+                WeaveBuilder.weave().method("sign", int.class)
+                        .placed(WeaveBuilder.MethodWeaveType.AFTER_BODY)
+                        .withStatement("%s.sign(this, \$1);", HELPER),
+                WeaveBuilder.weave().method("wide", long.class, double.class, String.class)
+                        .withStatement("%s.wide(this, \$1, \$2, \$3);", HELPER),
+                WeaveBuilder.weave().method("wide", long.class, double.class, String.class)
+                        .placed(WeaveBuilder.MethodWeaveType.AFTER_BODY)
+                        .withStatement("%s.wideResult(this);", HELPER),
+                WeaveBuilder.weave().method("staticWide", double.class, long.class)
+                        .withStatement("%s.staticWide(\$1, \$2);", HELPER),
+                WeaveBuilder.weave().method("typed", Object.class)
+                        .withStatement("%s.typed(this, (java.lang.String) \$1);", HELPER),
+                WeaveBuilder.weave().method("overloaded", String.class)
+                        .withStatement("%s.overloaded(this, \$1);", HELPER),
+                WeaveBuilder.weave().method("loop", int.class)
+                        .withStatement("%s.loop(this, \$1);", HELPER)
+        ]
+        for (WeaveBuilder.IWeaveBuild weave : weaves) {
+            for (WeaveBuilder.WeaveSpec spec : weave.buildWeaves()) {
+                plan.addMethodWeave(spec)
+            }
+        }
+
+        // each engine weaves its own copy of classes
+        ClassPool classPool = createClassPool()
+        BladeWeaver weaver = new BladeWeaver(false, engine, [(HELPER): plan.build()])
+        weaver.weave(classPool, [classPool.get(HELPER)])
+
+        ClassLoader loader = load(classPool)
+        def target = loader.loadClass(TARGET).newInstance()
+        List<Object> results = []
+        results << target.sign(5) << target.sign(-5) << target.sign(0)
+        results << target.wide(1L, 2.5d, "x")
+        results << loader.loadClass(TARGET).staticWide(1.5d, 2L)
+        target.typed("value")
+        target.overloaded("value")
+        target.loop(2)
+        try {
+            target.typed(1)
+        } catch (ClassCastException ignored) {
+            target.calls.add("ClassCastException")
+        }
+        return [calls: target.calls, staticCalls: loader.loadClass(HELPER).STATIC_CALLS, results: results]
+    }
+
+    private ClassPool createClassPool() {
+        ClassPool classPool = new ClassPool(true)
+        classPool.appendClassPath(classDir.absolutePath)
+        return classPool
+    }
+
+    /**
+     * @return new class loader of current classes of given pool
+     */
+    private static ClassLoader load(ClassPool classPool) {
+        Map<String, byte[]> classes = [:]
+        for (String className : [TARGET, HELPER]) {
+            CtClass cls = classPool.get(className)
+            classes.put(className, cls.toBytecode())
+            cls.defrost()
+        }
+        return new BytecodeClassLoader(classes)
+    }
+
+    private File compile(Map<String, String> sources) {
+        File sourceDir = folder.newFolder()
+        File classDir = folder.newFolder()
+        List<File> files = []
+        sources.each { String className, String source ->
+            File file = new File(sourceDir, className.replace('.' as char, File.separatorChar) + ".java")
+            file.parentFile.mkdirs()
+            file.text = source
+            files << file
+        }
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler()
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null)
+        List<String> options = ["-d", classDir.absolutePath, "-proc:none"]
+        try {
+            assert compiler.getTask(null, fileManager, null, options, null,
+                    fileManager.getJavaFileObjectsFromFiles(files)).call()
+        } finally {
+            fileManager.close()
+        }
+        return classDir
+    }
+
+    private static final class BytecodeClassLoader
+            extends ClassLoader {
+
+        private final Map<String, byte[]> mClasses
+
+        BytecodeClassLoader(Map<String, byte[]> classes) {
+            super(DirectCallWeaverSpecification.class.getClassLoader())
+            mClasses = classes
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytecode = mClasses.get(name)
+            if (bytecode == null) {
+                throw new ClassNotFoundException(name)
+            }
+            return defineClass(name, bytecode, 0, bytecode.length)
+        }
+    }
+}
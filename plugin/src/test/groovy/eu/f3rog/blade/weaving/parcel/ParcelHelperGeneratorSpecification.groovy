@@ -0,0 +1,319 @@
+package eu.f3rog.blade.weaving.parcel
+
+import eu.f3rog.blade.compiler.BladeProcessor
+import eu.f3rog.blade.compiler.builder.helper.HelperIndex
+import javassist.ClassPool
+import javassist.CtClass
+import javassist.CtField
+import javassist.CtMethod
+import javassist.bytecode.CodeIterator
+import javassist.bytecode.ConstPool
+import javassist.bytecode.Opcode
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import javax.tools.JavaCompiler
+import javax.tools.StandardJavaFileManager
+import javax.tools.ToolProvider
+
+
+final class ParcelHelperGeneratorSpecification
+        extends Specification {
+
+    // the same as annotations of the bytecode variant of the parcel module
+    private static final Map<String, String> ANNOTATIONS = [
+            "blade.Parcel"      : '''
+                    package blade;
+
+                    import java.lang.annotation.Retention;
+                    import java.lang.annotation.Target;
+
+                    import static java.lang.annotation.ElementType.TYPE;
+                    import static java.lang.annotation.RetentionPolicy.CLASS;
+
+                    @Target(TYPE)
+                    @Retention(CLASS)
+                    public @interface Parcel {
+                    }
+                    ''',
+            "blade.ParcelIgnore": '''
+                    package blade;
+
+                    import java.lang.annotation.Retention;
+                    import java.lang.annotation.Target;
+
+                    import static java.lang.annotation.ElementType.FIELD;
+                    import static java.lang.annotation.RetentionPolicy.CLASS;
+
+                    @Target(FIELD)
+                    @Retention(CLASS)
+                    public @interface ParcelIgnore {
+                    }
+                    '''
+    ]
+
+    private static final Map<String, String> SOURCES = [
+            "com.example.Item"          : '''
+                    package com.example;
+
+                    public class Item implements android.os.Parcelable {
+                        public static final Creator<Item> CREATOR = null;
+                        public int describeContents() { return 0; }
+                        public void writeToParcel(android.os.Parcel dest, int flags) {}
+                    }
+                    ''',
+            "com.example.Data"          : '''
+                    package com.example;
+
+                    @blade.Parcel
+                    public class Data implements android.os.Parcelable {
+                        static int sCount;
+                        final int mConstant = 1;
+                        @blade.ParcelIgnore String mIgnored;
+
+                        byte mByte;
+                        boolean mBoolean;
+                        short mShort;
+                        int mInt;
+                        long mLong;
+                        double mDouble;
+                        float mFloat;
+                        String mString;
+                        Integer mInteger;
+                        android.os.Bundle mBundle;
+                        int[] mInts;
+                        String[] mStrings;
+                        android.util.SparseBooleanArray mFlags;
+                        Item mItem;
+                        Item[] mItems;
+                        java.util.Date[] mDates;
+                        java.util.ArrayList<String> mList;
+                        java.util.List<String> mAbstractList;
+                        Object mObject;
+                        private String privateValue;
+
+                        public Data(android.os.Parcel in) {}
+
+                        public String getPrivateValue() { return privateValue; }
+                        public void setPrivateValue(String value) { privateValue = value; }
+
+                        public int describeContents() { return 0; }
+                        public void writeToParcel(android.os.Parcel dest, int flags) {}
+                    }
+                    ''',
+            "com.example.Outer"         : '''
+                    package com.example;
+
+                    public class Outer {
+
+                        @blade.Parcel
+                        public static class Inner implements android.os.Parcelable {
+                            protected long id;
+
+                            public Inner(android.os.Parcel in) {}
+
+                            protected long getId() { return id; }
+                            protected void setId(long id) { this.id = id; }
+
+                            public int describeContents() { return 0; }
+                            public void writeToParcel(android.os.Parcel dest, int flags) {}
+                        }
+                    }
+                    ''',
+            "com.example.Generic"       : '''
+                    package com.example;
+
+                    @blade.Parcel
+                    public class Generic<T, P extends android.os.Parcelable> implements android.os.Parcelable {
+                        T mValue;
+                        P mParcelable;
+
+                        public Generic(android.os.Parcel in) {}
+
+                        public int describeContents() { return 0; }
+                        public void writeToParcel(android.os.Parcel dest, int flags) {}
+                    }
+                    '''
+    ]
+
+    @Rule
+    final TemporaryFolder folder = new TemporaryFolder()
+
+    @Unroll
+    def "helper of #targetName is the same as helper generated by annotation processor"() {
+        given:
+        File processed = compile(SOURCES, true)
+        ClassPool classPool = createClassPool(compile(SOURCES + ANNOTATIONS, false))
+        File generated = folder.newFolder("generated")
+
+        when:
+        String generatedHelperName = new ParcelHelperGenerator().generate(classPool.get(targetName), generated)
+
+        then:
+        generatedHelperName == helperName
+        readIndexEntry(generated, helperName) == readIndexEntry(processed, helperName)
+        getFields(generated, helperName) == getFields(processed, helperName)
+        getMethods(generated, helperName) == getMethods(processed, helperName)
+        getCreatorInterfaces(generated, helperName) == getCreatorInterfaces(processed, helperName)
+
+        where:
+        targetName                   | helperName
+        "com.example.Data"           | "com.example.Data_Helper"
+        "com.example.Outer\$Inner"   | "com.example.Outer_Inner_Helper"
+        "com.example.Generic"        | "com.example.Generic_Helper"
+    }
+
+    def "class without fields to parcel does not have helper"() {
+        given:
+        Map<String, String> sources = ANNOTATIONS + [
+                "com.example.Empty": '''
+                        package com.example;
+
+                        @blade.Parcel
+                        public class Empty implements android.os.Parcelable {
+                            @blade.ParcelIgnore int mIgnored;
+
+                            public Empty(android.os.Parcel in) {}
+
+                            public int describeContents() { return 0; }
+                            public void writeToParcel(android.os.Parcel dest, int flags) {}
+                        }
+                        '''
+        ]
+        ClassPool classPool = createClassPool(compile(sources, false))
+
+        expect:
+        new ParcelHelperGenerator().generate(classPool.get("com.example.Empty"), folder.newFolder("generated")) == null
+    }
+
+    @Unroll
+    def "invalid class is rejected - #description"() {
+        given:
+        Map<String, String> sources = ANNOTATIONS + [
+                "com.example.Invalid": """
+                        package com.example;
+
+                        @blade.Parcel
+                        public class Invalid ${implementation} {
+                            ${body}
+
+                            public int describeContents() { return 0; }
+                            public void writeToParcel(android.os.Parcel dest, int flags) {}
+                        }
+                        """.toString()
+        ]
+        ClassPool classPool = createClassPool(compile(sources, false))
+
+        when:
+        new ParcelHelperGenerator().generate(classPool.get("com.example.Invalid"), folder.newFolder("generated"))
+
+        then:
+        thrown(IllegalStateException)
+
+        where:
+        description            | implementation                         | body
+        "not parcelable"       | ""                                     | "int mValue; public Invalid(android.os.Parcel in) {}"
+        "without constructor"  | "implements android.os.Parcelable"     | "int mValue;"
+        "private constructor"  | "implements android.os.Parcelable"     | "int mValue; private Invalid(android.os.Parcel in) {}"
+        "without getter"       | "implements android.os.Parcelable"     | "private int mValue; public Invalid(android.os.Parcel in) {} public void setValue(int v) {}"
+        "without setter"       | "implements android.os.Parcelable"     | "private int mValue; public Invalid(android.os.Parcel in) {} public int getValue() { return 0; }"
+    }
+
+    private File compile(Map<String, String> sources, boolean process) {
+        File sourceDir = folder.newFolder()
+        File classDir = folder.newFolder()
+        List<File> files = []
+        sources.each { String className, String source ->
+            File file = new File(sourceDir, className.replace('.' as char, File.separatorChar) + ".java")
+            file.parentFile.mkdirs()
+            file.text = source
+            files << file
+        }
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler()
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null)
+        List<String> options = ["-d", classDir.absolutePath, "-classpath", System.getProperty("java.class.path")]
+        if (!process) {
+            options << "-proc:none"
+        }
+        JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, null, options, null,
+                fileManager.getJavaFileObjectsFromFiles(files))
+        if (process) {
+            task.setProcessors([new BladeProcessor(BladeProcessor.Module.PARCEL)])
+        }
+        try {
+            assert task.call()
+        } finally {
+            fileManager.close()
+        }
+        return classDir
+    }
+
+    private static ClassPool createClassPool(File classDir) {
+        ClassPool classPool = new ClassPool(true)
+        classPool.appendClassPath(classDir.absolutePath)
+        return classPool
+    }
+
+    private static List<Byte> readIndexEntry(File classDir, String helperName) {
+        File entry = new File(classDir, HelperIndex.getEntryPath(helperName).replace('/' as char, File.separatorChar))
+        return entry.bytes as List<Byte>
+    }
+
+    private static CtClass readClass(File classDir, String className) {
+        ClassPool classPool = new ClassPool(true)
+        File classFile = new File(classDir, className.replace('.' as char, File.separatorChar) + ".class")
+        return classPool.makeClass(new ByteArrayInputStream(classFile.bytes))
+    }
+
+    private static List<String> getFields(File classDir, String helperName) {
+        List<String> fields = []
+        for (CtField field : readClass(classDir, helperName).getDeclaredFields()) {
+            fields << field.getName() + ":" + field.getFieldInfo2().getDescriptor() + ":" + field.getModifiers()
+        }
+        return fields.sort()
+    }
+
+    /**
+     * @return signatures of helper methods with all methods they call and casts in order of calls
+     */
+    private static Map<String, List<String>> getMethods(File classDir, String helperName) {
+        Map<String, List<String>> methods = new TreeMap<>()
+        for (CtMethod method : readClass(classDir, helperName).getDeclaredMethods()) {
+            methods.put(method.getName() + method.getSignature(), getCalls(method))
+        }
+        return methods
+    }
+
+    private static List<String> getCalls(CtMethod method) {
+        List<String> calls = []
+        ConstPool constPool = method.getMethodInfo2().getConstPool()
+        CodeIterator iterator = method.getMethodInfo2().getCodeAttribute().iterator()
+        while (iterator.hasNext()) {
+            int index = iterator.next()
+            int opcode = iterator.byteAt(index)
+            if (opcode == Opcode.INVOKEINTERFACE) {
+                int ref = iterator.u16bitAt(index + 1)
+                calls << constPool.getInterfaceMethodrefClassName(ref) + "." + constPool.getInterfaceMethodrefName(ref) +
+                        constPool.getInterfaceMethodrefType(ref)
+            } else if (opcode == Opcode.INVOKEVIRTUAL || opcode == Opcode.INVOKESTATIC || opcode == Opcode.INVOKESPECIAL) {
+                int ref = iterator.u16bitAt(index + 1)
+                calls << constPool.getMethodrefClassName(ref) + "." + constPool.getMethodrefName(ref) +
+                        constPool.getMethodrefType(ref)
+            } else if (opcode == Opcode.CHECKCAST) {
+                String cast = "(" + constPool.getClassInfo(iterator.u16bitAt(index + 1)) + ")"
+                // redundant repeated casts (e.g. of an array read by the processor's helper) are counted once
+                if (calls.isEmpty() || calls.last() != cast) {
+                    calls << cast
+                }
+            }
+        }
+        return calls
+    }
+
+    private static List<String> getCreatorInterfaces(File classDir, String helperName) {
+        return readClass(classDir, helperName + "\$1").getClassFile2().getInterfaces() as List<String>
+    }
+}
@@ -0,0 +1,194 @@
+package eu.f3rog.blade.weaving.state
+
+import eu.f3rog.blade.compiler.BladeProcessor
+import eu.f3rog.blade.compiler.builder.helper.HelperIndex
+import javassist.ClassPool
+import javassist.CtClass
+import javassist.CtMethod
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import javax.tools.JavaCompiler
+import javax.tools.StandardJavaFileManager
+import javax.tools.ToolProvider
+
+
+final class StateHelperGeneratorSpecification
+        extends Specification {
+
+    // the same as blade.State of the bytecode variant of the state module
+    private static final String STATE = '''
+            package blade;
+
+            import java.lang.annotation.Retention;
+            import java.lang.annotation.Target;
+
+            import static java.lang.annotation.ElementType.FIELD;
+            import static java.lang.annotation.RetentionPolicy.CLASS;
+
+            @Target(FIELD)
+            @Retention(CLASS)
+            public @interface State {
+
+                Class<? extends Bundler> value() default Bundler.class;
+            }
+            '''
+
+    private static final Map<String, String> SOURCES = [
+            "com.example.Data"            : '''
+                    package com.example;
+
+                    // has to implement Parcelable like classes annotated with @Parcel
+                    public class Data implements android.os.Parcelable {
+                        public int describeContents() { return 0; }
+                        public void writeToParcel(android.os.Parcel dest, int flags) {}
+                    }
+                    ''',
+            "com.example.DataBundler"     : '''
+                    package com.example;
+
+                    public class DataBundler implements blade.Bundler<Object> {
+                        public void save(Object value, android.os.Bundle state) {}
+                        public Object restore(android.os.Bundle state) { return null; }
+                    }
+                    ''',
+            "com.example.StatefulActivity": '''
+                    package com.example;
+
+                    public class StatefulActivity extends android.app.Activity {
+                        @blade.State int mCount;
+                        @blade.State String mText;
+                        @blade.State java.util.ArrayList<String> mList;
+                        @blade.State Data mData;
+                        @blade.State Data[] mDataArray;
+                        @blade.State(DataBundler.class) Object mCustom;
+                    }
+                    ''',
+            "com.example.StatefulView"    : '''
+                    package com.example;
+
+                    public class StatefulView extends android.view.View {
+                        @blade.State long mId;
+                        @blade.State Data mData;
+
+                        public StatefulView(android.content.Context context) {
+                            super(context);
+                        }
+
+                        @Override
+                        protected android.os.Parcelable onSaveInstanceState() {
+                            return super.onSaveInstanceState();
+                        }
+                    }
+                    '''
+    ]
+
+    @Rule
+    final TemporaryFolder folder = new TemporaryFolder()
+
+    @Unroll
+    def "helper of #targetName is the same as helper generated by annotation processor"() {
+        given:
+        File processed = compile(SOURCES, true)
+        ClassPool classPool = createClassPool(compile(SOURCES + ["blade.State": STATE], false))
+        File generated = folder.newFolder("generated")
+        String helperName = targetName + "_Helper"
+
+        when:
+        String generatedHelperName = new StateHelperGenerator().generate(classPool.get(targetName), generated)
+
+        then:
+        generatedHelperName == helperName
+        readIndexEntry(generated, helperName) == readIndexEntry(processed, helperName)
+        getMethods(generated, helperName) == getMethods(processed, helperName)
+
+        where:
+        targetName << ["com.example.StatefulActivity", "com.example.StatefulView"]
+    }
+
+    @Unroll
+    def "field of type #fieldType, which cannot be put into bundle, is rejected"() {
+        given:
+        Map<String, String> sources = SOURCES + [
+                "blade.State"                : STATE,
+                "com.example.Ambiguous"      : '''
+                        package com.example;
+
+                        public class Ambiguous extends Data implements java.io.Serializable {
+                        }
+                        ''',
+                "com.example.InvalidActivity": """
+                        package com.example;
+
+                        public class InvalidActivity extends android.app.Activity {
+                            @blade.State int mCount;
+                            @blade.State ${fieldType} mField;
+                        }
+                        """.toString()
+        ]
+        ClassPool classPool = createClassPool(compile(sources, false))
+
+        when:
+        new StateHelperGenerator().generate(classPool.get("com.example.InvalidActivity"), folder.newFolder("generated"))
+
+        then:
+        thrown(IllegalStateException)
+
+        where:
+        fieldType << ["com.example.Ambiguous", "Object"]
+    }
+
+    private File compile(Map<String, String> sources, boolean process) {
+        File sourceDir = folder.newFolder()
+        File classDir = folder.newFolder()
+        List<File> files = []
+        sources.each { String className, String source ->
+            File file = new File(sourceDir, className.replace('.' as char, File.separatorChar) + ".java")
+            file.parentFile.mkdirs()
+            file.text = source
+            files << file
+        }
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler()
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null)
+        List<String> options = ["-d", classDir.absolutePath, "-classpath", System.getProperty("java.class.path")]
+        if (!process) {
+            options << "-proc:none"
+        }
+        JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, null, options, null,
+                fileManager.getJavaFileObjectsFromFiles(files))
+        if (process) {
+            task.setProcessors([new BladeProcessor(BladeProcessor.Module.STATE)])
+        }
+        try {
+            assert task.call()
+        } finally {
+            fileManager.close()
+        }
+        return classDir
+    }
+
+    private static ClassPool createClassPool(File classDir) {
+        ClassPool classPool = new ClassPool(true)
+        classPool.appendClassPath(classDir.absolutePath)
+        return classPool
+    }
+
+    private static List<Byte> readIndexEntry(File classDir, String helperName) {
+        File entry = new File(classDir, HelperIndex.getEntryPath(helperName).replace('/' as char, File.separatorChar))
+        return entry.bytes as List<Byte>
+    }
+
+    private static List<String> getMethods(File classDir, String helperName) {
+        ClassPool classPool = new ClassPool(true)
+        File helperFile = new File(classDir, helperName.replace('.' as char, File.separatorChar) + ".class")
+        CtClass helper = classPool.makeClass(new ByteArrayInputStream(helperFile.bytes))
+        List<String> methods = []
+        for (CtMethod method : helper.getDeclaredMethods()) {
+            methods << method.getName() + method.getSignature()
+        }
+        return methods.sort()
+    }
+}
@@ -0,0 +1,169 @@
+package eu.f3rog.blade.weaving.util
+
+import javassist.ClassPool
+import javassist.CtClass
+import javassist.CtField
+import javassist.CtNewConstructor
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+import java.util.jar.JarEntry
+import java.util.jar.JarOutputStream
+
+
+final class LibraryClassPoolsSpecification
+        extends Specification {
+
+    @Rule
+    final TemporaryFolder folder = new TemporaryFolder()
+
+    private ClassLoader loader = new URLClassLoader(new URL[0])
+
+    def "variants share pools of the same jars"() {
+        given:
+        File common = createJar("common.jar", "com.lib.Common")
+        File debug = createJar("debug.jar", "com.lib.Debug")
+        File release = createJar("release.jar", "com.lib.Release")
+
+        when:
+        ClassPool debugPool = LibraryClassPools.acquire([common, debug], loader)
+        ClassPool releasePool = LibraryClassPools.acquire([common, release], loader)
+
+        then:
+        !debugPool.is(releasePool)
+        debugPool.get("com.lib.Common").is(releasePool.get("com.lib.Common"))
+        debugPool.getOrNull("com.lib.Debug") != null
+        debugPool.getOrNull("com.lib.Release") == null
+        releasePool.getOrNull("com.lib.Release") != null
+        debugPool.get("java.lang.Object") != null
+
+        cleanup:
+        LibraryClassPools.release(debugPool)
+        LibraryClassPools.release(releasePool)
+    }
+
+    def "pool stays usable while another transform uses it"() {
+        given:
+        File common = createJar("common.jar", "com.lib.Common")
+        ClassPool pool1 = LibraryClassPools.acquire([common], loader)
+        ClassPool pool2 = LibraryClassPools.acquire([common], loader)
+
+        when:
+        LibraryClassPools.release(pool1)
+
+        then:
+        !pool1.is(pool2)
+        pool2.get("com.lib.Common") != null
+
+        cleanup:
+        LibraryClassPools.release(pool2)
+    }
+
+    def "jar is shared even if jars before it differ"() {
+        given:
+        File common = createJar("common.jar", "com.lib.Common")
+        File debug = createJar("debug.jar", "com.lib.Debug")
+        File release = createJar("release.jar", "com.lib.Release")
+
+        when:
+        ClassPool debugPool = LibraryClassPools.acquire([debug, common], loader)
+        ClassPool releasePool = LibraryClassPools.acquire([release, common], loader)
+
+        then:
+        debugPool.get("com.lib.Common").is(releasePool.get("com.lib.Common"))
+
+        cleanup:
+        LibraryClassPools.release(debugPool)
+        LibraryClassPools.release(releasePool)
+    }
+
+    def "superclass is found in another jar"() {
+        given:
+        File base = createJar("base.jar", "com.lib.Base")
+        File child = createJar("child.jar", "com.lib.Child", null, "com.lib.Base")
+
+        when:
+        ClassPool pool = LibraryClassPools.acquire([child, base], loader)
+
+        then:
+        pool.get("com.lib.Child").superclass.is(pool.get("com.lib.Base"))
+        pool.get("com.lib.Child[]").componentType.is(pool.get("com.lib.Child"))
+
+        cleanup:
+        LibraryClassPools.release(pool)
+    }
+
+    def "class of the first jar is used"() {
+        given:
+        File first = createJar("first.jar", "com.lib.Common", "first")
+        File second = createJar("second.jar", "com.lib.Common", "second")
+
+        when:
+        ClassPool pool = LibraryClassPools.acquire([first, second], loader)
+
+        then:
+        pool.get("com.lib.Common").getField("first") != null
+
+        cleanup:
+        LibraryClassPools.release(pool)
+    }
+
+    def "changed jar is not shared"() {
+        given:
+        File jar = createJar("lib.jar", "com.lib.Common")
+        ClassPool pool1 = LibraryClassPools.acquire([jar], loader)
+        LibraryClassPools.release(pool1)
+
+        when:
+        jar.delete()
+        createJar("lib.jar", "com.lib.Common", "changed")
+        jar.lastModified = jar.lastModified() + 10000L
+        ClassPool pool2 = LibraryClassPools.acquire([jar], loader)
+
+        then:
+        pool2.get("com.lib.Common").getField("changed") != null
+
+        cleanup:
+        LibraryClassPools.release(pool2)
+    }
+
+    def "pool cannot be released more times"() {
+        given:
+        File jar = createJar("lib.jar", "com.lib.Common")
+        ClassPool pool = LibraryClassPools.acquire([jar], loader)
+        LibraryClassPools.release(pool)
+
+        when:
+        LibraryClassPools.release(pool)
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    private File createJar(String name, String className, String fieldName = null, String superclassName = null) {
+        ClassPool classPool = new ClassPool(true)
+        CtClass cls
+        if (superclassName != null) {
+            CtClass superclass = classPool.makeClass(superclassName)
+            superclass.addConstructor(CtNewConstructor.defaultConstructor(superclass))
+            cls = classPool.makeClass(className, superclass)
+        } else {
+            cls = classPool.makeClass(className)
+        }
+        if (fieldName != null) {
+            cls.addField(CtField.make("int ${fieldName};", cls))
+        }
+
+        File jar = new File(folder.root, name)
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))
+        try {
+            out.putNextEntry(new JarEntry(className.replace('.', '/') + ".class"))
+            out.write(cls.toBytecode())
+            out.closeEntry()
+        } finally {
+            out.close()
+        }
+        return jar
+    }
+}
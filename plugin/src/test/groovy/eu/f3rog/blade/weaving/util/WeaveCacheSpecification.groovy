@@ -0,0 +1,153 @@
+package eu.f3rog.blade.weaving.util
+
+import javassist.ClassPool
+import javassist.CtClass
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+
+final class WeaveCacheSpecification
+        extends Specification {
+
+    private static final String VERSION = "1.0/source"
+    private static final String LIBRARIES_KEY = "libraries"
+
+    @Rule
+    final TemporaryFolder folder = new TemporaryFolder()
+
+    private File cacheDir
+
+    def setup() {
+        cacheDir = folder.newFolder("cache")
+    }
+
+    def "woven classes are read as they were written"() {
+        given:
+        WeaveCache cache = new WeaveCache(cacheDir, 1024 * 1024, VERSION)
+        Map<String, byte[]> classes = new TreeMap<>()
+        classes.put("com.example.Act", [1, 2, 3] as byte[])
+        classes.put("com.example.Act_Helper", null)
+        classes.put("com.example.Act_MembersInjector", new byte[0])
+
+        when:
+        cache.put("key", classes)
+        Map<String, byte[]> cached = new WeaveCache(cacheDir, 1024 * 1024, VERSION).get("key")
+
+        then:
+        cached.keySet() == classes.keySet()
+        cached.get("com.example.Act") == [1, 2, 3] as byte[]
+        cached.containsKey("com.example.Act_Helper")
+        cached.get("com.example.Act_Helper") == null
+        cached.get("com.example.Act_MembersInjector") == new byte[0]
+    }
+
+    def "missing and broken entries are not used"() {
+        given:
+        WeaveCache cache = new WeaveCache(cacheDir, 1024 * 1024, VERSION)
+        File broken = new File(cacheDir, "broken.woven")
+        broken.bytes = [0, 0, 0, 2, 0, 0, 0, 1] as byte[]
+
+        expect:
+        cache.get("missing") == null
+        cache.get("broken") == null
+        !broken.exists()
+    }
+
+    def "key depends on all classes, libraries and version"() {
+        given:
+        WeaveCache cache = new WeaveCache(cacheDir, 1024 * 1024, VERSION)
+        Map<String, byte[]> classes = createClasses()
+        String key = cache.createKey(classes, LIBRARIES_KEY)
+
+        Map<String, byte[]> reversed = new LinkedHashMap<>()
+        for (String className : classes.keySet().toList().reverse()) {
+            reversed.put(className, classes.get(className))
+        }
+
+        Map<String, byte[]> changedTarget = createClasses()
+        changedTarget.put("com.example.Act", [1, 2, 4] as byte[])
+        Map<String, byte[]> changedSuperclass = createClasses()
+        changedSuperclass.put("com.example.BaseAct", [6] as byte[])
+        Map<String, byte[]> addedSuperclass = createClasses()
+        addedSuperclass.put("com.example.AbstractAct", [7] as byte[])
+        Map<String, byte[]> missingInjector = createClasses()
+        missingInjector.put("com.example.Act_MembersInjector", null)
+
+        expect:
+        key == cache.createKey(reversed, LIBRARIES_KEY)
+        key == new WeaveCache(cacheDir, 1024 * 1024, VERSION).createKey(createClasses(), LIBRARIES_KEY)
+        key != cache.createKey(changedTarget, LIBRARIES_KEY)
+        key != cache.createKey(changedSuperclass, LIBRARIES_KEY)
+        key != cache.createKey(addedSuperclass, LIBRARIES_KEY)
+        key != cache.createKey(missingInjector, LIBRARIES_KEY)
+        key != cache.createKey(classes, "other libraries")
+        key != new WeaveCache(cacheDir, 1024 * 1024, VERSION + "/inline").createKey(classes, LIBRARIES_KEY)
+    }
+
+    def "key of libraries depends on changes of jars"() {
+        given:
+        File jar1 = folder.newFile("lib1.jar")
+        jar1.bytes = [1, 2, 3] as byte[]
+        File jar2 = folder.newFile("lib2.jar")
+        jar2.bytes = [4, 5, 6] as byte[]
+        String key = WeaveCache.createLibrariesKey([jar1, jar2])
+
+        when:
+        jar2.bytes = [4, 5, 6, 7] as byte[]
+
+        then:
+        key != WeaveCache.createLibrariesKey([jar1, jar2])
+        WeaveCache.createLibrariesKey([jar1, jar2]) == WeaveCache.createLibrariesKey([jar1, jar2])
+        WeaveCache.createLibrariesKey([jar1]) != WeaveCache.createLibrariesKey([jar1, jar2])
+        WeaveCache.createLibrariesKey([jar1, jar2]) != WeaveCache.createLibrariesKey([jar2, jar1])
+    }
+
+    def "least recently used entries are removed first"() {
+        given:
+        byte[] bytecode = new byte[100]
+        WeaveCache writer = new WeaveCache(cacheDir, 1024 * 1024, VERSION)
+        for (String key : ["aaa", "bbb", "ccc"]) {
+            writer.put(key, Collections.singletonMap("com.example.Act", bytecode))
+        }
+        long entrySize = new File(cacheDir, "aaa.woven").length()
+        new File(cacheDir, "aaa.woven").lastModified = 10000L
+        new File(cacheDir, "bbb.woven").lastModified = 20000L
+        new File(cacheDir, "ccc.woven").lastModified = 30000L
+        WeaveCache cache = new WeaveCache(cacheDir, 2 * entrySize, VERSION)
+
+        when:
+        cache.get("aaa")
+        cache.trim()
+
+        then:
+        cacheDir.list().sort() == ["aaa.woven", "ccc.woven"]
+
+        when:
+        new WeaveCache(cacheDir, entrySize, VERSION).trim()
+
+        then:
+        cacheDir.list() == ["aaa.woven"] as String[]
+    }
+
+    def "helpers with interfaces are not cacheable"() {
+        given:
+        ClassPool classPool = new ClassPool(true)
+        CtClass helper = classPool.makeClass("com.example.Act_Helper")
+        CtClass helperWithInterface = classPool.makeClass("com.example.Fragment_Helper")
+        helperWithInterface.addInterface(classPool.get("java.io.Serializable"))
+
+        expect:
+        WeaveCache.isCacheable(helper.toBytecode())
+        !WeaveCache.isCacheable(helperWithInterface.toBytecode())
+    }
+
+    private static Map<String, byte[]> createClasses() {
+        Map<String, byte[]> classes = new TreeMap<>()
+        classes.put("com.example.Act", [1, 2, 3] as byte[])
+        classes.put("com.example.Act_Helper", [4] as byte[])
+        classes.put("com.example.Act_MembersInjector", [5] as byte[])
+        classes.put("com.example.BaseAct", [6, 7] as byte[])
+        return classes
+    }
+}
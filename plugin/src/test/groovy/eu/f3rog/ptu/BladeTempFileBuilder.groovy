@@ -20,11 +20,17 @@ public final class BladeTempFileBuilder
 
     private final List<String> mModules
     private final FileType mType
+    private final String mEngine
 
     public BladeTempFileBuilder(final FileType type, final List<String> modules) {
+        this(type, modules, null)
+    }
+
+    public BladeTempFileBuilder(final FileType type, final List<String> modules, final String engine) {
         super("blade." + type.getExtension())
         mType = type
         mModules = modules
+        mEngine = engine
     }
 
     @Override
@@ -32,11 +38,12 @@ public final class BladeTempFileBuilder
         switch (mType) {
             case FileType.JSON:
                 final String modules = mModules.collect({ "\"$it\"" }).join(", ")
+                final String engine = (mEngine != null) ? ",\n    \"engine\": \"${mEngine}\"" : ""
                 return """{
     "debug": false,
     "modules": [
         ${modules}
-    ]
+    ]${engine}
 }
                 """
 
@@ -46,6 +53,9 @@ public final class BladeTempFileBuilder
                 for (final String module : mModules) {
                     body += "\n  - ${module}"
                 }
+                if (mEngine != null) {
+                    body += "\nengine: ${mEngine}"
+                }
                 return body
 
             default:
@@ -59,4 +59,8 @@ public final class TempProjectFolder
     public TempProjectFolder addBladeFile(final BladeTempFileBuilder.FileType type, final List<String> bladeModules) {
         return this.addFile(new BladeTempFileBuilder(type, bladeModules))
     }
+
+    public TempProjectFolder addBladeFile(final BladeTempFileBuilder.FileType type, final List<String> bladeModules, final String engine) {
+        return this.addFile(new BladeTempFileBuilder(type, bladeModules, engine))
+    }
 }
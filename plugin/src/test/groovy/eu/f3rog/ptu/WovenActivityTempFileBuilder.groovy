@@ -0,0 +1,41 @@
+package eu.f3rog.ptu
+
+public final class WovenActivityTempFileBuilder
+        extends TempFileBuilder {
+
+    public WovenActivityTempFileBuilder() {
+        super('src/main/java/com/example/WovenActivity.java')
+    }
+
+    @Override
+    public String getBody() {
+        return """package com.example;
+
+import android.app.Activity;
+import android.os.Bundle;
+
+import blade.Extra;
+import blade.State;
+
+public class WovenActivity extends Activity {
+
+    @Extra String mText;
+    @State int mNumber;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        if (savedInstanceState == null) {
+            return;
+        }
+        mNumber++;
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+    }
+}
+        """
+    }
+}